@@ -0,0 +1,137 @@
+package org.kgrid.shelf.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of parsing ark ids and looking them up in a map, comparing the patterns compiled on
+ * every construction and builder-based equality and hash codes (the old behaviour) with the precompiled
+ * patterns, {@link ArkId#create(String)} and the cached hash code.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArkIdBenchmark {
+
+  @Param({"hello-world", "hello-world-v0.1.0", "ark:/hello/world/v0.1.0"})
+  public String path;
+
+  private final Map<ArkId, String> index = new HashMap<>();
+  private final ArkId key = new ArkId("naan500", "name500", "v1");
+  private final Map<LegacyArkId, String> legacyIndex = new HashMap<>();
+  private final LegacyArkId legacyKey = new LegacyArkId("naan500", "name500", "v1");
+
+  @Setup
+  public void fillIndex() {
+    for (int i = 0; i < 1000; i++) {
+      index.put(new ArkId("naan" + i, "name" + i, "v1"), "ko" + i);
+      legacyIndex.put(new LegacyArkId("naan" + i, "name" + i, "v1"), "ko" + i);
+    }
+  }
+
+  @Benchmark
+  public String[] compilePatternsPerCall() {
+    return legacyParse(path);
+  }
+
+  @Benchmark
+  public ArkId precompiledPatterns() {
+    return new ArkId(path);
+  }
+
+  @Benchmark
+  public ArkId interned() {
+    return ArkId.create(path);
+  }
+
+  @Benchmark
+  public int builderHashCode() {
+    return new HashCodeBuilder(17, 37)
+        .append(key.getNaan()).append(key.getName()).append(key.getVersion()).toHashCode();
+  }
+
+  @Benchmark
+  public int cachedHashCode() {
+    return key.hashCode();
+  }
+
+  @Benchmark
+  public String legacyMapLookup() {
+    return legacyIndex.get(legacyKey);
+  }
+
+  @Benchmark
+  public String mapLookup() {
+    return index.get(key);
+  }
+
+  /** How the ark id constructor parsed paths before its patterns were precompiled */
+  private static String[] legacyParse(String path) {
+    Pattern[] patterns = {
+        Pattern.compile("ark:/(\\w+)/(\\w+)"),
+        Pattern.compile("(\\w+)-(\\w+)"),
+        Pattern.compile("ark:/(\\w+)/(\\w+)/([a-zA-Z0-9._\\-]+)"),
+        Pattern.compile("(\\w+)-(\\w+)/([a-zA-Z0-9._\\-]+)"),
+        Pattern.compile("(\\w+)-(\\w+)-([a-zA-Z0-9._\\-]+)")};
+    for (Pattern pattern : patterns) {
+      Matcher matcher = pattern.matcher(path);
+      if (matcher.matches()) {
+        return new String[] {
+            matcher.group(1), matcher.group(2), matcher.groupCount() > 2 ? matcher.group(3) : null};
+      }
+    }
+    throw new IllegalArgumentException("Cannot create ark id from " + path);
+  }
+
+  /** How ark ids compared and hashed before their hash code was cached */
+  private static class LegacyArkId {
+
+    private final String naan;
+    private final String name;
+    private final String version;
+
+    LegacyArkId(String naan, String name, String version) {
+      this.naan = naan;
+      this.name = name;
+      this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      LegacyArkId arkId = (LegacyArkId) o;
+      return new EqualsBuilder()
+          .append(naan, arkId.naan).append(name, arkId.name).append(version, arkId.version)
+          .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+      return new HashCodeBuilder(17, 37).append(naan).append(name).append(version).toHashCode();
+    }
+  }
+}
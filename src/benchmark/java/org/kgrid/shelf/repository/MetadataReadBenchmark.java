@@ -0,0 +1,72 @@
+package org.kgrid.shelf.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.kgrid.shelf.domain.KnowledgeObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per call cost of reading KO metadata, comparing a new mapper per call (the old behaviour) with
+ * the shared {@link ShelfMappers} reader, on its own and through {@link FilesystemCDOStore}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetadataReadBenchmark {
+
+  private Path shelf;
+  private File metadataFile;
+  private FilesystemCDOStore store;
+  private final ShelfMappers mappers = ShelfMappers.getDefault();
+
+  @Setup
+  public void setUp() throws IOException {
+    shelf = Files.createTempDirectory("metadata-benchmark");
+    FileUtils.copyDirectory(new File("src/test/resources/shelf"), shelf.toFile());
+    metadataFile = shelf.resolve("hello-world-v0.1.0")
+        .resolve(KnowledgeObject.METADATA_FILENAME).toFile();
+    store = new FilesystemCDOStore("filesystem:" + shelf.toUri());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(shelf.toFile());
+  }
+
+  @Benchmark
+  public JsonNode newMapperPerCall() throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.setSerializationInclusion(Include.NON_NULL);
+    return mapper.readTree(metadataFile);
+  }
+
+  @Benchmark
+  public JsonNode sharedReader() throws IOException {
+    return mappers.jsonReader().readValue(metadataFile);
+  }
+
+  @Benchmark
+  public JsonNode filesystemStoreGetMetadata() {
+    return store.getMetadata("hello-world-v0.1.0");
+  }
+}
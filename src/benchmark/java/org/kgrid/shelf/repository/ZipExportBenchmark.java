@@ -0,0 +1,120 @@
+package org.kgrid.shelf.repository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.kgrid.shelf.domain.ArkId;
+import org.kgrid.shelf.domain.KnowledgeObject;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time and peak heap of exporting a KO with one large, incompressible artifact, streamed into an
+ * output stream compared with building the whole zip in memory first (the old behaviour). The
+ * peak heap in MB is reported as the peakHeapMb secondary result; JMH sums it over iterations, so
+ * a single measurement iteration (of one export) is run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 1, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+@State(Scope.Benchmark)
+public class ZipExportBenchmark {
+
+  private static final String KO_FOLDER = "big-ko-v1";
+
+  @Param({"500"})
+  public int artifactSizeMb;
+
+  private Path shelf;
+  private FilesystemCDOStore store;
+  private final ZipExportService exportService = new ZipExportService();
+  private final ArkId arkId = new ArkId("big", "ko", "v1");
+
+  @Setup(Level.Trial)
+  public void createShelf() throws IOException {
+    shelf = Files.createTempDirectory("export-benchmark");
+    Path ko = Files.createDirectories(shelf.resolve(KO_FOLDER).resolve("dist"));
+    FileUtils.write(ko.getParent().resolve(KnowledgeObject.METADATA_FILENAME).toFile(),
+        "{\"@id\":\"big-ko\",\"identifier\":\"ark:/big/ko\",\"version\":\"v1\","
+            + "\"hasServiceSpecification\":\"service.yaml\"}", StandardCharsets.UTF_8);
+    FileUtils.write(ko.getParent().resolve("service.yaml").toFile(),
+        "openapi: 3.0.0\npaths:\n  /run:\n    post:\n      x-kgrid-activation:\n"
+            + "        artifact: dist/model.bin\n", StandardCharsets.UTF_8);
+    byte[] chunk = new byte[1024 * 1024];
+    Random random = new Random(42);
+    try (OutputStream model = Files.newOutputStream(ko.resolve("model.bin"))) {
+      for (int i = 0; i < artifactSizeMb; i++) {
+        random.nextBytes(chunk);
+        model.write(chunk);
+      }
+    }
+    store = new FilesystemCDOStore("filesystem:" + shelf.toUri());
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteShelf() throws IOException {
+    FileUtils.deleteDirectory(shelf.toFile());
+  }
+
+  @Benchmark
+  public void streamingExport(PeakHeap peakHeap) throws IOException {
+    exportService.exportObject(arkId, KO_FOLDER, store, NullOutputStream.NULL_OUTPUT_STREAM);
+    peakHeap.record();
+  }
+
+  @Benchmark
+  public void inMemoryExport(PeakHeap peakHeap) throws IOException {
+    exportService.exportObject(arkId, KO_FOLDER, store).writeTo(NullOutputStream.NULL_OUTPUT_STREAM);
+    peakHeap.record();
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class PeakHeap {
+
+    public long peakHeapMb;
+
+    @Setup(Level.Invocation)
+    public void reset() {
+      System.gc();
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          pool.resetPeakUsage();
+        }
+      }
+    }
+
+    void record() {
+      long peak = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          peak += pool.getPeakUsage().getUsed();
+        }
+      }
+      peakHeapMb = peak / (1024 * 1024);
+    }
+  }
+}
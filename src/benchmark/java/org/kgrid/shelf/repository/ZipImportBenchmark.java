@@ -0,0 +1,111 @@
+package org.kgrid.shelf.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.kgrid.shelf.domain.ArkId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of re-importing a KO zip into a filesystem shelf, committing the transaction with an
+ * atomic rename compared with copying the transaction folder into the shelf (the old behaviour).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZipImportBenchmark {
+
+  @Param({"20"})
+  public int artifactSizeMb;
+
+  private byte[] zip;
+  private Path renamingShelf;
+  private Path copyingShelf;
+  private FilesystemCDOStore renamingStore;
+  private FilesystemCDOStore copyingStore;
+  private final ZipImportService importService = new ZipImportService();
+
+  @Setup(Level.Trial)
+  public void createZip() throws IOException {
+    ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(zipBytes)) {
+      out.putNextEntry(new ZipEntry("big-ko/metadata.json"));
+      out.write(("{\"@id\":\"big-ko\",\"@type\":\"koio:KnowledgeObject\","
+          + "\"identifier\":\"ark:/big/ko\",\"version\":\"v1\"}").getBytes(StandardCharsets.UTF_8));
+      out.putNextEntry(new ZipEntry("big-ko/dist/model.bin"));
+      byte[] chunk = new byte[1024 * 1024];
+      Random random = new Random(42);
+      for (int i = 0; i < artifactSizeMb; i++) {
+        random.nextBytes(chunk);
+        out.write(chunk);
+      }
+    }
+    zip = zipBytes.toByteArray();
+
+    renamingShelf = Files.createTempDirectory("import-benchmark-rename");
+    copyingShelf = Files.createTempDirectory("import-benchmark-copy");
+    renamingStore = new FilesystemCDOStore("filesystem:" + renamingShelf.toUri());
+    copyingStore = new CopyingFilesystemCDOStore("filesystem:" + copyingShelf.toUri());
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteShelves() throws IOException {
+    FileUtils.deleteDirectory(renamingShelf.toFile());
+    FileUtils.deleteDirectory(copyingShelf.toFile());
+  }
+
+  @Benchmark
+  public ArkId renameCommit() {
+    return importService.importKO(new ByteArrayInputStream(zip), renamingStore);
+  }
+
+  @Benchmark
+  public ArkId copyCommit() {
+    return importService.importKO(new ByteArrayInputStream(zip), copyingStore);
+  }
+
+  /**
+   * Commits the way the filesystem store did before transactions were renamed into place
+   */
+  static class CopyingFilesystemCDOStore extends FilesystemCDOStore {
+
+    CopyingFilesystemCDOStore(String connectionURI) {
+      super(connectionURI);
+    }
+
+    @Override
+    public void commitTransaction(String transactionID) {
+      File tempFolder = new File(getAbsoluteLocation(""), transactionID);
+      try {
+        FileUtils.copyDirectory(tempFolder, new File(getAbsoluteLocation("")));
+        FileUtils.deleteDirectory(tempFolder);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -3,8 +3,11 @@ package org.kgrid.shelf.controller;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.kgrid.shelf.ShelfException;
+import org.kgrid.shelf.ShelfResourceNotFound;
 import org.kgrid.shelf.domain.ArkId;
 import org.kgrid.shelf.repository.KnowledgeObjectRepository;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -22,15 +25,30 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 @RequestMapping("${kgrid.shelf.endpoint:kos}")
 @CrossOrigin(origins = "${cors.url:}")
-public class ImportExportController extends ShelfController implements InitializingBean {
+public class ImportExportController extends ShelfController
+    implements InitializingBean, DisposableBean {
+
+  static final int DEFAULT_MANIFEST_THREADS = 4;
+  static final int MAX_JOBS = 100;
 
   final String[] startupManifestLocations;
 
@@ -38,6 +56,24 @@ public class ImportExportController extends ShelfController implements Initializ
 
   @Autowired ObjectMapper mapper;
 
+  // Number of manifest KOs imported at the same time, across all manifests
+  int manifestThreads = DEFAULT_MANIFEST_THREADS;
+  // Background manifest imports by id, the oldest forgotten once there are MAX_JOBS
+  private final Map<String, ManifestImportJob> jobs =
+      Collections.synchronizedMap(new LinkedHashMap<String, ManifestImportJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ManifestImportJob> eldest) {
+          return size() > MAX_JOBS;
+        }
+      });
+  private ExecutorService importExecutor;
+  // Completes once every startup manifest has been loaded
+  private volatile CompletableFuture<Void> startupManifests;
+  private final AtomicInteger startupManifestsLoaded = new AtomicInteger();
+  private final AtomicInteger startupKosImported = new AtomicInteger();
+  private final AtomicInteger startupKosFailed = new AtomicInteger();
+  private final List<String> startupManifestErrors = new CopyOnWriteArrayList<>();
+
   public ImportExportController(
       KnowledgeObjectRepository shelf,
       Optional<KnowledgeObjectDecorator> kod,
@@ -46,32 +82,83 @@ public class ImportExportController extends ShelfController implements Initializ
     this.startupManifestLocations = startupManifestLocations;
   }
 
+  @Autowired
+  void setManifestThreads(
+      @Value("${kgrid.shelf.manifest.threads:" + DEFAULT_MANIFEST_THREADS + "}") int threads) {
+    this.manifestThreads = Math.max(1, threads);
+  }
+
+  /**
+   * Starts loading the startup manifests in the background so the application, and the KOs
+   * already on the shelf, are available while they are imported. The manifests are read and their
+   * KOs imported one manifest after another on the shared import pool.
+   */
   @Override
   public void afterPropertiesSet() {
-    if (null != startupManifestLocations) {
-      log.info("Initializing shelf with {} Manifests", startupManifestLocations.length);
-      for (String location : startupManifestLocations) {
-        log.info("Loading manifest from location: {}", location);
-        loadManifestIfSet(location);
-      }
+    if (null == startupManifestLocations || startupManifestLocations.length == 0) {
+      startupManifests = CompletableFuture.completedFuture(null);
+      return;
+    }
+    long start = System.currentTimeMillis();
+    log.info("Initializing shelf with {} Manifests", startupManifestLocations.length);
+    CompletableFuture<Void> loading = CompletableFuture.completedFuture(null);
+    for (String location : startupManifestLocations) {
+      loading = loading.thenCompose(loaded -> loadStartupManifest(location));
     }
+    startupManifests = loading.thenRun(() ->
+        log.info("Loaded {} startup manifests in {} ms", startupManifestLocations.length,
+            System.currentTimeMillis() - start));
   }
 
-  Map<String, Object> loadManifestIfSet(String startupManifestLocation) {
-    Resource manifestResource;
-    try {
-      manifestResource = applicationContext.getResource(startupManifestLocation);
-    } catch (Exception e) {
-      log.warn(e.getMessage());
-      return Collections.emptyMap();
+  private CompletableFuture<Void> loadStartupManifest(String location) {
+    return CompletableFuture
+        .supplyAsync(() -> {
+          log.info("Loading manifest from location: {}", location);
+          return manifestJob(readManifest(location));
+        }, importExecutor())
+        .thenCompose(job -> importAll(job).thenApply(imported -> job))
+        .handle((job, error) -> {
+          if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause() : error;
+            log.warn("Cannot load manifest " + location + ", " + cause.getMessage());
+            startupManifestErrors.add(location + ": " + cause.getMessage());
+          } else {
+            for (ManifestImportJob.Item item : job.getItems()) {
+              (item.getArk() != null ? startupKosImported : startupKosFailed).incrementAndGet();
+            }
+          }
+          startupManifestsLoaded.incrementAndGet();
+          return null;
+        });
+  }
+
+  /**
+   * Progress of loading the startup manifests, for the readiness health check
+   */
+  Map<String, Object> getStartupManifestStatus() {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("loaded", startupManifests != null && startupManifests.isDone());
+    status.put("manifests", startupManifestLocations == null ? 0 : startupManifestLocations.length);
+    status.put("manifestsLoaded", startupManifestsLoaded.get());
+    status.put("kosImported", startupKosImported.get());
+    status.put("kosFailed", startupKosFailed.get());
+    if (!startupManifestErrors.isEmpty()) {
+      status.put("errors", new ArrayList<>(startupManifestErrors));
     }
+    return status;
+  }
 
+  CompletableFuture<Void> getStartupManifests() {
+    return startupManifests;
+  }
+
+  private JsonNode readManifest(String manifestLocation) {
+    Resource manifestResource = applicationContext.getResource(manifestLocation);
     try (InputStream stream = manifestResource.getInputStream()) {
-      JsonNode manifest = mapper.readTree(stream);
-      return depositKnowledgeObject(manifest).getBody();
+      return mapper.readTree(stream);
     } catch (IOException e) {
-      log.warn(e.getMessage());
-      return Collections.emptyMap();
+      throw new ShelfException("Cannot read manifest " + manifestLocation, e);
     }
   }
 
@@ -132,30 +219,114 @@ public class ImportExportController extends ShelfController implements Initializ
 
     log.info("Add kos from manifest {}", manifest.asText());
 
+    ManifestImportJob job = manifestJob(manifest);
+    log.info("importing {} kos on up to {} threads", job.getItems().size(), manifestThreads);
+    importAll(job).join();
+
+    Map<String, Object> response = new HashMap<String, Object>();
+    ArrayNode arkList = new ObjectMapper().createArrayNode();
+    job.getItems().stream()
+        .filter(item -> item.getArk() != null)
+        .forEach(item -> arkList.add(item.getArk()));
+    response.put("Added", arkList);
+    response.put("Items", job.toMap().get("Items"));
+    response.put("millis", job.getMillis());
+    log.info("imported {} of {} kos in {} ms", arkList.size(), job.getItems().size(),
+        job.getMillis());
+    return new ResponseEntity<Map<String, Object>>(response, HttpStatus.CREATED);
+  }
+
+  /**
+   * Starts importing the manifest in the background and returns straight away with the job,
+   * whose progress can be followed at the Location returned
+   */
+  @PostMapping(path = "/manifest", params = "async=true",
+      consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> startManifestImport(@RequestBody JsonNode manifest) {
+
+    ManifestImportJob job = manifestJob(manifest);
+    jobs.put(job.getId(), job);
+    log.info("import job {} started for {} kos", job.getId(), job.getItems().size());
+    importAll(job);
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.setLocation(ServletUriComponentsBuilder.fromCurrentRequestUri()
+        .replaceQuery(null).pathSegment("jobs", job.getId()).build().toUri());
+    return new ResponseEntity<>(job.toMap(), headers, HttpStatus.ACCEPTED);
+  }
+
+  @GetMapping(path = "/manifest/jobs/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Map<String, Object> getManifestImport(@PathVariable String id) {
+    ManifestImportJob job = jobs.get(id);
+    if (job == null) {
+      throw new ShelfResourceNotFound("No manifest import job " + id);
+    }
+    return job.toMap();
+  }
+
+  @Override
+  public void destroy() {
+    synchronized (jobs) {
+      if (importExecutor != null) {
+        importExecutor.shutdownNow();
+      }
+    }
+  }
+
+  private ManifestImportJob manifestJob(JsonNode manifest) {
     if (!manifest.has("manifest")) {
       throw new IllegalArgumentException(
           "Provide manifest field with url or array of urls as the value");
     }
+    Set<String> koLocations = new LinkedHashSet<>();
+    manifest.get("manifest").forEach(ko -> koLocations.add(ko.asText()));
+    return new ManifestImportJob(koLocations);
+  }
 
-    Map<String, Object> response = new HashMap<String, Object>();
-    JsonNode uris = manifest.get("manifest");
-    ArrayNode arkList = new ObjectMapper().createArrayNode();
-    log.info("importing {} kos", uris.size());
-    uris.forEach(
-        ko -> {
-          String koLocation = ko.asText();
-          try {
-            Resource koURL = applicationContext.getResource(koLocation);
-            log.info("import {}", koLocation);
-            InputStream zipStream = koURL.getInputStream();
-            ArkId arkId = shelf.importZip(zipStream);
-            arkList.add(arkId.toString());
-          } catch (Exception ex) {
-            log.warn("Error importing {}, {}", koLocation, ex.getMessage());
-          }
+  /**
+   * Queues the KOs of the job on the shared import pool, each KO being added to the index as soon
+   * as it is on the shelf
+   *
+   * @return completes once every KO of the job is imported or has failed
+   */
+  private CompletableFuture<Void> importAll(ManifestImportJob job) {
+    ExecutorService executor = importExecutor();
+    return CompletableFuture.allOf(job.getItems().stream()
+        .map(item -> CompletableFuture.runAsync(() -> importFromLocation(item), executor))
+        .toArray(CompletableFuture[]::new));
+  }
+
+  private void importFromLocation(ManifestImportJob.Item item) {
+    String koLocation = item.getLocation();
+    item.start();
+    try {
+      Resource koURL = applicationContext.getResource(koLocation);
+      log.info("import {}", koLocation);
+      try (InputStream zipStream = item.count(koURL.getInputStream())) {
+        item.imported(shelf.importZip(zipStream).toString());
+      }
+    } catch (Exception ex) {
+      log.warn("Error importing {}, {}", koLocation, ex.getMessage());
+      item.failed(String.valueOf(ex.getMessage()));
+    }
+  }
+
+  /**
+   * Pool every manifest import shares, whether startup, synchronous or background, started with
+   * the first import
+   */
+  private ExecutorService importExecutor() {
+    synchronized (jobs) {
+      if (importExecutor == null) {
+        AtomicInteger threads = new AtomicInteger();
+        importExecutor = Executors.newFixedThreadPool(manifestThreads, task -> {
+          Thread thread = new Thread(task, "manifest-import-" + threads.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
         });
-    response.put("Added", arkList);
-    return new ResponseEntity<Map<String, Object>>(response, HttpStatus.CREATED);
+      }
+      return importExecutor;
+    }
   }
 
   protected void exportZip(HttpServletResponse response, ArkId arkId) {
@@ -1,21 +1,39 @@
 package org.kgrid.shelf.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.nio.file.NoSuchFileException;
-import java.util.Collection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.StringUtils;
 import org.kgrid.shelf.domain.ArkId;
+import org.kgrid.shelf.domain.KnowledgeObject;
 import org.kgrid.shelf.repository.KnowledgeObjectRepository;
+import org.kgrid.shelf.repository.RangedResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -25,6 +43,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @RestController
@@ -37,12 +56,75 @@ public class KnowledgeObjectController extends ShelfController {
     super(shelf, kod);
   }
 
+  /**
+   * Lists the objects on the shelf from the index in ark id order, all of them unless a page or
+   * filter is asked for. X-Total-Count holds the number of matching objects, counted on the first
+   * page or when asked for, and when there are more a Link header points at the next page.
+   *
+   * @param limit most objects to return
+   * @param offset number of matching objects to skip
+   * @param cursor ark id of the last object of the previous page, e.g. hello-world/v0.1.0
+   * @param fields metadata fields to return, all of them if not given
+   * @param naan only objects with this naan
+   * @param keyword only objects with this text in their title, description or keywords
+   * @param hasServiceSpecification only objects with (or without) a service specification
+   * @param count whether to count the matching objects, by default only on the first page
+   */
   @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-  public Collection getAllObjects() {
+  public ResponseEntity<List<JsonNode>> getAllObjects(
+      @RequestParam(name = "limit", required = false) Integer limit,
+      @RequestParam(name = "offset", defaultValue = "0") long offset,
+      @RequestParam(name = "cursor", required = false) String cursor,
+      @RequestParam(name = "fields", required = false) List<String> fields,
+      @RequestParam(name = "naan", required = false) String naan,
+      @RequestParam(name = "keyword", required = false) String keyword,
+      @RequestParam(name = "hasServiceSpecification", required = false)
+          Boolean hasServiceSpecification,
+      @RequestParam(name = "count", required = false) Boolean count) {
     log.info("getting all kos");
-    Map koMap = shelf.findAll();
-    log.info("found " + koMap.size() + " kos");
-    return koMap.values();
+    if ((limit != null && limit < 1) || offset < 0) {
+      throw new IllegalArgumentException("limit must be positive and offset cannot be negative");
+    }
+    Predicate<Map.Entry<ArkId, JsonNode>> filter = ko ->
+        (naan == null || naan.equals(ko.getKey().getNaan()))
+            && (hasServiceSpecification == null
+            || hasServiceSpecification == ko.getValue().has(KnowledgeObject.SERVICE_SPEC_TERM))
+            && (keyword == null || hasKeyword(ko.getValue(), keyword.toLowerCase()));
+
+    // One more than the page, to tell whether there is a next page without another scan
+    List<Map.Entry<ArkId, JsonNode>> page = shelf
+        .findAllAfter(cursor == null ? null : new ArkId(cursor)).entrySet().stream()
+        .filter(filter)
+        .skip(offset)
+        .limit(limit == null ? Long.MAX_VALUE : limit + 1L)
+        .collect(Collectors.toList());
+    boolean more = limit != null && page.size() > limit;
+    if (more) {
+      page = page.subList(0, limit);
+    }
+
+    HttpHeaders headers = new HttpHeaders();
+    boolean firstPage = cursor == null && offset == 0;
+    if (count != null ? count : firstPage) {
+      long total = firstPage && !more ? page.size()
+          : shelf.findAll().entrySet().stream().filter(filter).count();
+      headers.set("X-Total-Count", String.valueOf(total));
+      log.info("found " + page.size() + " of " + total + " kos");
+    } else {
+      log.info("found " + page.size() + " kos");
+    }
+    if (more) {
+      ArkId last = page.get(page.size() - 1).getKey();
+      String next = ServletUriComponentsBuilder.fromCurrentRequest()
+          .replaceQueryParam("offset")
+          .replaceQueryParam("cursor",
+              last.hasVersion() ? last.getDashArkVersion() : last.getDashArk())
+          .toUriString();
+      headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+    }
+    return new ResponseEntity<>(page.stream()
+        .map(ko -> fields == null ? ko.getValue() : project(ko.getValue(), fields))
+        .collect(Collectors.toList()), headers, HttpStatus.OK);
   }
 
   @GetMapping(path = "/{naan}/{name}",  produces = MediaType.APPLICATION_JSON_VALUE)
@@ -99,7 +181,7 @@ public class KnowledgeObjectController extends ShelfController {
 
     ArkId arkId = new ArkId(naan, name, version);
 
-    return shelf.findServiceSpecification(arkId);
+    return shelf.findServiceSpecificationJson(arkId);
   }
 
   @GetMapping(path = "/{naan}/{name}/service", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -112,20 +194,20 @@ public class KnowledgeObjectController extends ShelfController {
 
     ArkId arkId = new ArkId(naan, name, version);
 
-    return shelf.findServiceSpecification(arkId);
+    return shelf.findServiceSpecificationJson(arkId);
   }
 
   @GetMapping(path = "/{naan}/{name}/service", produces = MediaType.ALL_VALUE)
   public Object getServiceDescriptionYaml(
       @PathVariable String naan,
       @PathVariable String name,
-      @RequestParam(name = "v", required = false) String version) throws JsonProcessingException {
+      @RequestParam(name = "v", required = false) String version) {
 
     log.info("getting ko service  " + naan + "/" + name + "/" + version);
 
     ArkId arkId = new ArkId(naan, name, version);
 
-    return new YAMLMapper().writeValueAsString(shelf.findServiceSpecification(arkId));
+    return shelf.findServiceSpecificationYaml(arkId);
   }
 
 //  @GetMapping(path = "/{naan}/{name}/{version}/service", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -146,21 +228,22 @@ public class KnowledgeObjectController extends ShelfController {
   public Object getOldServiceDescriptionYaml(
       @PathVariable String naan,
       @PathVariable String name,
-      @PathVariable String version) throws JsonProcessingException {
+      @PathVariable String version) {
 
     log.info("getting ko service  " + naan + "/" + name + "/" + version);
 
     ArkId arkId = new ArkId(naan, name, version);
 
-    return new YAMLMapper().writeValueAsString(shelf.findServiceSpecification(arkId));
+    return shelf.findServiceSpecificationYaml(arkId);
   }
 
 
   @GetMapping(path = "/{naan}/{name}/{version}/**", produces = MediaType.ALL_VALUE)
-  public Object getBinary(
+  public void getBinary(
       @PathVariable String naan,
       @PathVariable String name,
-      @PathVariable String version, HttpServletRequest request) throws NoSuchFileException {
+      @PathVariable String version, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
 
     log.info("getting ko resource " + naan + "/" + name + "/" + version);
 
@@ -172,12 +255,41 @@ public class KnowledgeObjectController extends ShelfController {
 
     log.info("getting ko resource " + naan + "/" + name + "/" + version + childPath);
 
-    byte[] binary = shelf.getBinaryOrMetadata(arkId, childPath);
-    if (binary != null) {
-      return binary;
-    } else {
-      throw new NoSuchFileException("Cannot fetch file at " + childPath);
+    // Resolved before anything is written so a missing file can still be answered with an error
+    Resource binary = shelf.getBinaryOrMetadataResource(arkId, childPath);
+    long size = contentLength(binary);
+    long lastModified = lastModified(binary);
+    String etag = etag(binary, size, lastModified);
+
+    // Sets ETag and Last-Modified, and answers 304 (or 412) from the conditional request headers
+    if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+      return;
     }
+
+    response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    if (size < 0) {
+      copy(binary, 0, -1, response.getOutputStream());
+      return;
+    }
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    HttpRange range = requestedRange(request, etag, lastModified);
+    if (range == null) {
+      response.setContentLengthLong(size);
+      copy(binary, 0, size, response.getOutputStream());
+      return;
+    }
+    long start = range.getRangeStart(size);
+    long end = range.getRangeEnd(size);
+    if (start >= size) {
+      response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+      response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+      return;
+    }
+    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+    response.setContentLengthLong(end - start + 1);
+    copy(binary, start, end - start + 1, response.getOutputStream());
   }
 
 
@@ -226,5 +338,132 @@ public class KnowledgeObjectController extends ShelfController {
 
   }
 
+  /**
+   * The single byte range asked for, or null when the whole binary should be sent: no Range
+   * header, a Range header that can't be parsed, several ranges, or an If-Range validator that no
+   * longer matches
+   */
+  private HttpRange requestedRange(HttpServletRequest request, String etag, long lastModified) {
+    String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+    if (rangeHeader == null) {
+      return null;
+    }
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (ifRange != null) {
+      if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+        if (!ifRange.equals(etag)) {
+          return null;
+        }
+      } else {
+        try {
+          if (lastModified < 0
+              || request.getDateHeader(HttpHeaders.IF_RANGE) != lastModified / 1000 * 1000) {
+            return null;
+          }
+        } catch (IllegalArgumentException e) {
+          return null;
+        }
+      }
+    }
+    try {
+      List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+      return ranges.size() == 1 ? ranges.get(0) : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
 
+  /**
+   * Copies part of a binary, using a positioned transfer when the store hands out a file channel
+   * and asking the store for just the range when it can read one
+   *
+   * @param count number of bytes to copy, or -1 for everything after the position
+   */
+  private void copy(Resource binary, long position, long count, OutputStream out)
+      throws IOException {
+    if (binary instanceof RangedResource && count >= 0) {
+      try (InputStream source = ((RangedResource) binary).getInputStream(position, count)) {
+        StreamUtils.copy(source, out);
+      }
+      return;
+    }
+    try (ReadableByteChannel source = binary.readableChannel()) {
+      if (source instanceof FileChannel) {
+        FileChannel file = (FileChannel) source;
+        long remaining = count < 0 ? file.size() - position : count;
+        WritableByteChannel target = Channels.newChannel(out);
+        while (remaining > 0) {
+          long transferred = file.transferTo(position, remaining, target);
+          if (transferred <= 0) {
+            // The file was truncated while it was being sent
+            break;
+          }
+          position += transferred;
+          remaining -= transferred;
+        }
+      } else if (count < 0) {
+        StreamUtils.copy(Channels.newInputStream(source), out);
+      } else {
+        StreamUtils.copyRange(Channels.newInputStream(source), out, position,
+            position + count - 1);
+      }
+    }
+  }
+
+  private boolean hasKeyword(JsonNode metadata, String keyword) {
+    for (String field : new String[] {"title", "description", "keywords"}) {
+      JsonNode value = metadata.get(field);
+      if (value != null) {
+        for (JsonNode text : value.isArray() ? value : Collections.singletonList(value)) {
+          if (text.asText().toLowerCase().contains(keyword)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private JsonNode project(JsonNode metadata, List<String> fields) {
+    ObjectNode projection = JsonNodeFactory.instance.objectNode();
+    for (String field : fields) {
+      if (metadata.has(field)) {
+        projection.set(field, metadata.get(field));
+      }
+    }
+    return projection;
+  }
+
+  private long contentLength(Resource binary) {
+    // Reading the length of a plain stream would consume it
+    if (binary instanceof InputStreamResource) {
+      return -1;
+    }
+    try {
+      return binary.contentLength();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  private long lastModified(Resource binary) {
+    try {
+      return binary.lastModified();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Size and modification time for files, a content hash for binaries already held in memory
+   */
+  private String etag(Resource binary, long size, long lastModified) {
+    if (size >= 0 && lastModified > 0) {
+      return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+    if (binary instanceof ByteArrayResource) {
+      return "\"" + DigestUtils.md5DigestAsHex(((ByteArrayResource) binary).getByteArray()) + "\"";
+    }
+    return null;
+  }
 }
@@ -0,0 +1,167 @@
+package org.kgrid.shelf.controller;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * Progress of importing the KOs listed in one manifest, safe to read while the imports run
+ */
+class ManifestImportJob {
+
+  private final String id = UUID.randomUUID().toString();
+  private final List<Item> items;
+  private final AtomicInteger remaining;
+  private final long started = System.currentTimeMillis();
+  private volatile long finished;
+
+  ManifestImportJob(Collection<String> koLocations) {
+    List<Item> items = new ArrayList<>(koLocations.size());
+    for (String koLocation : koLocations) {
+      items.add(new Item(koLocation));
+    }
+    this.items = Collections.unmodifiableList(items);
+    this.remaining = new AtomicInteger(items.size());
+    if (items.isEmpty()) {
+      finished = started;
+    }
+  }
+
+  String getId() {
+    return id;
+  }
+
+  List<Item> getItems() {
+    return items;
+  }
+
+  boolean isFinished() {
+    return finished != 0;
+  }
+
+  long getMillis() {
+    return (isFinished() ? finished : System.currentTimeMillis()) - started;
+  }
+
+  /**
+   * Summary of the job with the status of each KO, as returned by the job endpoint
+   */
+  Map<String, Object> toMap() {
+    // Read first so a finished job never shows items still being imported
+    boolean finished = isFinished();
+    long millis = getMillis();
+    List<Map<String, Object>> itemMaps = new ArrayList<>(items.size());
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    long bytes = 0;
+    for (Item item : items) {
+      Map<String, Object> itemMap = item.toMap();
+      itemMaps.add(itemMap);
+      counts.merge((String) itemMap.get("status"), 1, Integer::sum);
+      bytes += item.bytes.get();
+    }
+    Map<String, Object> job = new LinkedHashMap<>();
+    job.put("id", id);
+    job.put("status", finished ? "finished" : "running");
+    job.put("total", items.size());
+    job.put("counts", counts);
+    job.put("bytes", bytes);
+    job.put("millis", millis);
+    job.put("bytesPerSecond", millis == 0 ? 0 : bytes * 1000 / millis);
+    job.put("kosPerSecond", millis == 0 ? 0
+        : (items.size() - remaining.get()) * 1000.0 / millis);
+    job.put("Items", itemMaps);
+    return job;
+  }
+
+  private void itemDone() {
+    if (remaining.decrementAndGet() == 0) {
+      finished = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * One KO location of the manifest
+   */
+  class Item {
+
+    private final String location;
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile String status = "pending";
+    private volatile String ark;
+    private volatile String error;
+    private volatile long started;
+    private volatile long finished;
+
+    private Item(String location) {
+      this.location = location;
+    }
+
+    String getLocation() {
+      return location;
+    }
+
+    String getArk() {
+      return ark;
+    }
+
+    void start() {
+      started = System.currentTimeMillis();
+      status = "importing";
+    }
+
+    /**
+     * Counts the bytes of the KO zip as they are read
+     */
+    InputStream count(InputStream zipStream) {
+      return new ProxyInputStream(zipStream) {
+        @Override
+        protected void afterRead(int n) {
+          if (n > 0) {
+            bytes.addAndGet(n);
+          }
+        }
+      };
+    }
+
+    void imported(String ark) {
+      this.ark = ark;
+      finish("imported");
+    }
+
+    void failed(String error) {
+      this.error = error;
+      finish("failed");
+    }
+
+    private void finish(String status) {
+      finished = System.currentTimeMillis();
+      this.status = status;
+      itemDone();
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> item = new LinkedHashMap<>();
+      item.put("location", location);
+      item.put("status", status);
+      if (ark != null) {
+        item.put("ark", ark);
+      }
+      if (error != null) {
+        item.put("error", error);
+      }
+      item.put("bytes", bytes.get());
+      if (started != 0) {
+        item.put("millis", (finished != 0 ? finished : System.currentTimeMillis()) - started);
+      }
+      return item;
+    }
+  }
+}
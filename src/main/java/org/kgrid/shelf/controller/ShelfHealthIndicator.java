@@ -1,6 +1,8 @@
 package org.kgrid.shelf.controller;
 
 import org.kgrid.shelf.repository.KnowledgeObjectRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.stereotype.Component;
@@ -8,17 +10,44 @@ import org.springframework.stereotype.Component;
 @Component
 public class ShelfHealthIndicator implements HealthIndicator {
 
+  static final long DEFAULT_TTL = 10000;
+
   ShelfHealthIndicator(KnowledgeObjectRepository shelf) {
+    this(shelf, DEFAULT_TTL);
+  }
+
+  @Autowired
+  ShelfHealthIndicator(KnowledgeObjectRepository shelf,
+      @Value("${kgrid.shelf.health.ttl:" + DEFAULT_TTL + "}") long ttl) {
     this.shelf = shelf;
+    this.ttl = ttl;
   }
 
   final KnowledgeObjectRepository shelf;
+  // Milliseconds a health check is reused for, so frequent probes don't each reach the store
+  final long ttl;
+  private volatile Health health;
+  private volatile long checked;
 
   @Override
   public Health health() {
+    Health cached = health;
+    if (cached != null && System.currentTimeMillis() - checked < ttl) {
+      return cached;
+    }
+    synchronized (this) {
+      if (health == null || System.currentTimeMillis() - checked >= ttl) {
+        health = check();
+        checked = System.currentTimeMillis();
+      }
+      return health;
+    }
+  }
+
+  private Health check() {
     try {
-      return Health.up()
-          .withDetail("numberOfKOs", shelf.findAll().size())
+      return (shelf.isStoreAvailable() ? Health.up() : Health.down())
+          .withDetail("numberOfKOs", shelf.count())
           .withDetail("kgrid.shelf.cdostore.url", shelf.getConnection())
           .build();
     } catch (Exception ex) {
@@ -0,0 +1,24 @@
+package org.kgrid.shelf.controller;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Progress of loading the kgrid.shelf.manifest KOs. Always up, readiness is held back by
+ * {@link StartupManifestsReadiness} so a long import doesn't take the whole health down.
+ */
+@Component
+public class StartupManifestsHealthIndicator implements HealthIndicator {
+
+  StartupManifestsHealthIndicator(ImportExportController importExportController) {
+    this.importExportController = importExportController;
+  }
+
+  final ImportExportController importExportController;
+
+  @Override
+  public Health health() {
+    return Health.up().withDetails(importExportController.getStartupManifestStatus()).build();
+  }
+}
@@ -0,0 +1,43 @@
+package org.kgrid.shelf.controller;
+
+import java.util.concurrent.CompletableFuture;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.Ordered;
+
+/**
+ * Keeps the application refusing traffic until the kgrid.shelf.manifest KOs have been loaded.
+ * Runs after the listener that marks the application ready, so it can take readiness back while
+ * the manifests are still loading. Liveness, and the overall health, are left alone.
+ */
+public class StartupManifestsReadiness implements SpringApplicationRunListener, Ordered {
+
+  public StartupManifestsReadiness(SpringApplication application, String[] args) {
+  }
+
+  @Override
+  public int getOrder() {
+    // After EventPublishingRunListener, which publishes ACCEPTING_TRAFFIC
+    return 1;
+  }
+
+  @Override
+  public void running(ConfigurableApplicationContext context) {
+    context.getBeanProvider(ImportExportController.class)
+        .ifAvailable(controller -> holdUntilLoaded(context, controller.getStartupManifests()));
+  }
+
+  static void holdUntilLoaded(ConfigurableApplicationContext context,
+      CompletableFuture<Void> startupManifests) {
+    if (startupManifests == null || startupManifests.isDone()) {
+      return;
+    }
+    AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+    // Runs straight away if they finished in the meantime, so readiness always ends up accepting
+    startupManifests.whenComplete((loaded, error) ->
+        AvailabilityChangeEvent.publish(context, ReadinessState.ACCEPTING_TRAFFIC));
+  }
+}
@@ -2,22 +2,33 @@ package org.kgrid.shelf.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import javax.validation.constraints.NotNull;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public final class ArkId implements Comparable {
 
   private static final String ARK_FORMAT = "ark:/%s/%s";
+  private static final String VERSION_REGEX = "([a-zA-Z0-9._\\-]+)";
+  private static final Pattern ARK_ID_PATTERN =
+      Pattern.compile("ark:/(\\w+)/(\\w+)(?:/" + VERSION_REGEX + ")?");
+  private static final Pattern ARK_DIRECTORY_PATTERN =
+      Pattern.compile("(\\w+)-(\\w+)(?:[/-]" + VERSION_REGEX + ")?");
+  private static final int MAX_INTERNED = 10000;
+  // Lock free so lookups on request threads never wait on each other, cleared when full and
+  // filled again by the ids still in use. Only ids of KOs on the shelf are interned.
+  private static final Map<String, ArkId> INTERNED = new ConcurrentHashMap<>();
+
   private final String naan;
   private final String name;
   private final String version;
+  private final int hashCode;
 
   /* TODO:
-   *    - add static 'create(String path)' factory method for creation from existing path
    *    - remove all '..Slash..' methods (consider using only naan-name, even in urls)
    *    - make getId() return 'ark:/naan/name'
    *    - make getArk return 'naan-name'
@@ -39,53 +50,52 @@ public final class ArkId implements Comparable {
    * ark:/naan-name
    * ark:/naan/name/version
    * ark:/naan-name/version
+   * naan-name
+   * naan-name/version
+   * naan-name-version
    */
   public ArkId(String path) {
-    String arkIdRegex = "ark:/(\\w+)/(\\w+)";
-    Matcher arkIdMatcher = Pattern.compile(arkIdRegex).matcher(path);
-    String arkDirectoryRegex = "(\\w+)-(\\w+)";
-    Matcher arkDirectoryMatcher = Pattern.compile(arkDirectoryRegex).matcher(path);
-    String arkIdVersionRegex = "ark:/(\\w+)/(\\w+)/([a-zA-Z0-9._\\-]+)";
-    Matcher arkIdVersionMatcher = Pattern.compile(arkIdVersionRegex).matcher(path);
-    String arkDirectoryVersionRegex = "(\\w+)-(\\w+)/([a-zA-Z0-9._\\-]+)";
-    Matcher arkDirectoryVersionMatcher = Pattern.compile(arkDirectoryVersionRegex).matcher(path);
-    String arkHyphenVersionRegex = "(\\w+)-(\\w+)-([a-zA-Z0-9._\\-]+)";
-    Matcher arkHyphenVersionMatcher = Pattern.compile(arkHyphenVersionRegex).matcher(path);
-    if (arkIdMatcher.matches()) {
-      naan = arkIdMatcher.group(1);
-      name = arkIdMatcher.group(2);
-      version = null;
-    } else if (arkDirectoryMatcher.matches()) {
-      naan = arkDirectoryMatcher.group(1);
-      name = arkDirectoryMatcher.group(2);
-      version = null;
-    } else if (arkIdVersionMatcher.matches()) {
-      naan = arkIdVersionMatcher.group(1);
-      name = arkIdVersionMatcher.group(2);
-      version = arkIdVersionMatcher.group(3);
-    } else if (arkDirectoryVersionMatcher.matches()) {
-      naan = arkDirectoryVersionMatcher.group(1);
-      name = arkDirectoryVersionMatcher.group(2);
-      version = arkDirectoryVersionMatcher.group(3);
-    } else if (arkHyphenVersionMatcher.matches()) {
-      naan = arkHyphenVersionMatcher.group(1);
-      name = arkHyphenVersionMatcher.group(2);
-      version = arkHyphenVersionMatcher.group(3);
-    } else {
+    Matcher matcher = (path.startsWith("ark:/") ? ARK_ID_PATTERN : ARK_DIRECTORY_PATTERN)
+        .matcher(path);
+    if (!matcher.matches()) {
       throw new IllegalArgumentException("Cannot create ark id from " + path);
     }
+    naan = matcher.group(1);
+    name = matcher.group(2);
+    version = matcher.group(3);
+    hashCode = calculateHashCode();
   }
 
   public ArkId(String naan, String name) {
-    this.naan = naan;
-    this.name = name;
-    version = null;
+    this(naan, name, null);
   }
 
   public ArkId(String naan, String name, String version) {
     this.naan = naan;
     this.name = name;
     this.version = version;
+    hashCode = calculateHashCode();
+  }
+
+  /**
+   * Parses the path like {@link #ArkId(String)}, sharing the instance for paths seen before so
+   * ids built over and over (on every request or index refresh) are only parsed once. Ids
+   * parsed from request input should use the constructor, so clients cannot churn the cache.
+   */
+  public static ArkId create(String path) {
+    ArkId arkId = INTERNED.get(path);
+    if (arkId == null) {
+      arkId = new ArkId(path);
+      if (INTERNED.size() >= MAX_INTERNED) {
+        INTERNED.clear();
+      }
+      // Keeps whichever id another thread put first
+      ArkId interned = INTERNED.putIfAbsent(path, arkId);
+      if (interned != null) {
+        arkId = interned;
+      }
+    }
+    return arkId;
   }
 
   public static boolean isValid(String id) {
@@ -133,16 +143,19 @@ public final class ArkId implements Comparable {
 
     ArkId arkId = (ArkId) o;
 
-    return new EqualsBuilder()
-        .append(naan, arkId.naan)
-        .append(name, arkId.name)
-        .append(version, arkId.version)
-        .isEquals();
+    return hashCode == arkId.hashCode
+        && Objects.equals(naan, arkId.naan)
+        && Objects.equals(name, arkId.name)
+        && Objects.equals(version, arkId.version);
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder(17, 37).append(naan).append(name).append(version).toHashCode();
+    return hashCode;
+  }
+
+  private int calculateHashCode() {
+    return Objects.hash(naan, name, version);
   }
 
   @Override
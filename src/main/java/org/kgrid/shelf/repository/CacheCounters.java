@@ -0,0 +1,46 @@
+package org.kgrid.shelf.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit, miss, put and eviction counts for the shelf caches, read by {@link ShelfCacheMetrics}.
+ */
+final class CacheCounters {
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong puts = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  void put() {
+    puts.incrementAndGet();
+  }
+
+  void evict() {
+    evictions.incrementAndGet();
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  long getPuts() {
+    return puts.get();
+  }
+
+  long getEvictions() {
+    return evictions.get();
+  }
+}
@@ -2,13 +2,43 @@ package org.kgrid.shelf.repository;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import org.kgrid.shelf.ShelfException;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
 
 public interface CompoundDigitalObjectStore {
 
   List<String> getChildren(String... relativeLocationParts);
 
+  /**
+   * Lists everything up to maxDepth levels below a location, letting stores read the levels in
+   * fewer or parallel requests
+   *
+   * @param maxDepth number of levels to descend, 1 lists just the children
+   * @param relativeLocationParts location to start from
+   * @return descendants, level by level
+   */
+  default List<String> getChildren(int maxDepth, String... relativeLocationParts) {
+    List<String> descendants = new ArrayList<>();
+    List<String> level = getChildren(relativeLocationParts);
+    for (int depth = 1; depth <= maxDepth && !level.isEmpty(); depth++) {
+      descendants.addAll(level);
+      if (depth < maxDepth) {
+        List<String> nextLevel = new ArrayList<>();
+        for (String child : level) {
+          nextLevel.addAll(getChildren(child));
+        }
+        level = nextLevel;
+      }
+    }
+    return descendants;
+  }
+
   boolean isMetadata(String... relativeLocationParts);
 
   String getAbsoluteLocation(String... relativeLocationParts);
@@ -17,12 +47,54 @@ public interface CompoundDigitalObjectStore {
 
   byte[] getBinary(String... relativeLocationParts);
 
+  /**
+   * Binary as a resource that can be streamed, so large binaries are never held in memory by
+   * stores that can avoid it
+   *
+   * @param relativeLocationParts location of the binary
+   * @return readable resource for the binary
+   */
+  default Resource getBinaryResource(String... relativeLocationParts) {
+    return new ByteArrayResource(getBinary(relativeLocationParts));
+  }
+
+  /**
+   * Cheap check that the store can be reached, for health checks. Stores should override this with
+   * something lighter than listing the shelf.
+   *
+   * @return true if the shelf can be read
+   */
+  default boolean isAvailable() {
+    try {
+      getChildren("");
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
   void createContainer(String... relativeLocationParts);
 
   void saveMetadata(JsonNode metadata, String... relativeLocationParts);
 
   void saveBinary(byte[] data, String... relativeLocationParts);
 
+  /**
+   * Saves a binary from a stream, so stores that can write it as it is read never hold it all in
+   * memory. The stream is not closed.
+   *
+   * @param data contents of the binary
+   * @param relativeLocationParts location of the binary
+   */
+  default void saveBinary(InputStream data, String... relativeLocationParts) {
+    try {
+      saveBinary(StreamUtils.copyToByteArray(data), relativeLocationParts);
+    } catch (IOException e) {
+      throw new ShelfException("Cannot read binary for " + String.join("/", relativeLocationParts),
+          e);
+    }
+  }
+
   void delete(String... relativeLocationParts) throws ShelfException;
 
   String createTransaction();
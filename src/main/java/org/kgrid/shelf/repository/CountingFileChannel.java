@@ -0,0 +1,121 @@
+package org.kgrid.shelf.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.LongConsumer;
+
+/**
+ * A file channel that reports the bytes read or transferred out of it, still handing transfers to
+ * the file's own channel so they keep avoiding copies through the heap
+ */
+class CountingFileChannel extends FileChannel {
+
+  private final FileChannel delegate;
+  private final LongConsumer bytesRead;
+
+  CountingFileChannel(FileChannel delegate, LongConsumer bytesRead) {
+    this.delegate = delegate;
+    this.bytesRead = bytesRead;
+  }
+
+  private <T extends Number> T count(T read) {
+    if (read.longValue() > 0) {
+      bytesRead.accept(read.longValue());
+    }
+    return read;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    return count(delegate.read(dst));
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    return count(delegate.read(dsts, offset, length));
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    return count(delegate.read(dst, position));
+  }
+
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    return count(delegate.transferTo(position, count, target));
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    return delegate.write(src);
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    return delegate.write(srcs, offset, length);
+  }
+
+  @Override
+  public int write(ByteBuffer src, long position) throws IOException {
+    return delegate.write(src, position);
+  }
+
+  @Override
+  public long transferFrom(ReadableByteChannel src, long position, long count)
+      throws IOException {
+    return delegate.transferFrom(src, position, count);
+  }
+
+  @Override
+  public long position() throws IOException {
+    return delegate.position();
+  }
+
+  @Override
+  public FileChannel position(long newPosition) throws IOException {
+    delegate.position(newPosition);
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    return delegate.size();
+  }
+
+  @Override
+  public FileChannel truncate(long size) throws IOException {
+    delegate.truncate(size);
+    return this;
+  }
+
+  @Override
+  public void force(boolean metaData) throws IOException {
+    delegate.force(metaData);
+  }
+
+  @Override
+  public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+    return delegate.map(mode, position, size);
+  }
+
+  @Override
+  public FileLock lock(long position, long size, boolean shared) throws IOException {
+    return delegate.lock(position, size, shared);
+  }
+
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+    return delegate.tryLock(position, size, shared);
+  }
+
+  @Override
+  protected void implCloseChannel() throws IOException {
+    delegate.close();
+  }
+}
@@ -1,10 +1,10 @@
 package org.kgrid.shelf.repository;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -12,14 +12,34 @@ import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.client.HttpClient;
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.kgrid.shelf.ShelfException;
 import org.kgrid.shelf.ShelfResourceNotFound;
 import org.kgrid.shelf.domain.KnowledgeObject;
@@ -27,7 +47,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -42,34 +63,124 @@ import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 @Qualifier("fedora")
-public class FedoraCDOStore implements CompoundDigitalObjectStore {
+public class FedoraCDOStore implements CompoundDigitalObjectStore, Closeable {
+
+  static final int DEFAULT_MAX_CONNECTIONS = 50;
+  static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+  static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+  static final int DEFAULT_READ_TIMEOUT = 60000;
+  static final int DEFAULT_IDLE_TIMEOUT = 30000;
+  static final int DEFAULT_LISTING_THREADS = 8;
 
   private String userName;
 
-  private RestTemplateBuilder builder = new RestTemplateBuilder();
   private String password;
   private String storagePath;
 
   private final Logger log = LoggerFactory.getLogger(FedoraCDOStore.class);
 
+  private final ShelfMappers mappers = ShelfMappers.getDefault();
+
+  // One keep-alive connection pool shared by every request this store makes to fcrepo
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  private final RestTemplate restTemplate;
+  // Containers listed at the same time when walking the containment tree
+  private final int listingThreads;
+  // Lists the containers of one level in parallel, shared by every listing of this store
+  private final ThreadPoolExecutor listingExecutor;
+  // Only set when a triplestore indexing this fcrepo is configured with sparqlEndpoint
+  private final FusekiClient fusekiClient;
+
+  /**
+   * @param connectionURI fcrepo location, e.g. fedora:http://localhost:8080/fcrepo/rest/, optionally
+   *     followed by ?user=..&password=.. and the connection pool settings maxConnections,
+   *     maxConnectionsPerRoute, connectTimeout, readTimeout and idleTimeout (in milliseconds),
+   *     listingThreads and sparqlEndpoint, the query url of a triplestore indexing this fcrepo
+   */
   public FedoraCDOStore(
       @Value("${kgrid.shelf.cdostore.url:fedora:http://localhost:8080/fcrepo/rest/?user=fedoraAdmin&password=secret3}") String connectionURI) {
 
     URI uri = URI.create(connectionURI.substring(connectionURI.indexOf(':') + 1));
     String paramDelimiter = "&", userKey = "user=", passKey = "password=";
+    int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    int readTimeout = DEFAULT_READ_TIMEOUT;
+    int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    int listingThreads = DEFAULT_LISTING_THREADS;
+    String sparqlEndpoint = null;
     if (uri.getQuery() == null) {
       this.storagePath = uri.toString();
     } else {
       this.storagePath = uri.toString().substring(0, uri.toString().indexOf("?"));
       String[] parameters = uri.getQuery().split(paramDelimiter);
       for (String parameter : parameters) {
+        String value = StringUtils.substringAfter(parameter, "=");
         if (parameter.startsWith(userKey)) {
           this.userName = parameter.substring(userKey.length());
         } else if (parameter.startsWith(passKey)) {
           this.password = parameter.substring(passKey.length());
+        } else if (parameter.startsWith("maxConnections=")) {
+          maxConnections = Integer.parseInt(value);
+        } else if (parameter.startsWith("maxConnectionsPerRoute=")) {
+          maxConnectionsPerRoute = Integer.parseInt(value);
+        } else if (parameter.startsWith("connectTimeout=")) {
+          connectTimeout = Integer.parseInt(value);
+        } else if (parameter.startsWith("readTimeout=")) {
+          readTimeout = Integer.parseInt(value);
+        } else if (parameter.startsWith("idleTimeout=")) {
+          idleTimeout = Integer.parseInt(value);
+        } else if (parameter.startsWith("listingThreads=")) {
+          listingThreads = Integer.parseInt(value);
+        } else if (parameter.startsWith("sparqlEndpoint=")) {
+          sparqlEndpoint = value;
         }
       }
     }
+
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    httpClient = HttpClientBuilder.create()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(connectTimeout)
+            .setConnectionRequestTimeout(connectTimeout)
+            .setSocketTimeout(readTimeout)
+            .build())
+        .setRedirectStrategy(new DefaultRedirectStrategy())
+        .evictExpiredConnections()
+        .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+        .build();
+    restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    this.listingThreads = Math.max(1, listingThreads);
+    AtomicInteger threadCount = new AtomicInteger();
+    this.listingExecutor = new ThreadPoolExecutor(this.listingThreads, this.listingThreads,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+          Thread thread = new Thread(task, "fedora-listing-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.listingExecutor.allowCoreThreadTimeOut(true);
+    this.fusekiClient = sparqlEndpoint == null ? null : new FusekiClient(sparqlEndpoint);
+  }
+
+  /**
+   * Stops the listing threads and closes the pooled connections to fcrepo
+   */
+  @Override
+  public void close() throws IOException {
+    listingExecutor.shutdownNow();
+    httpClient.close();
+  }
+
+  PoolingHttpClientConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
+  ThreadPoolExecutor getListingExecutor() {
+    return listingExecutor;
   }
 
 
@@ -130,6 +241,22 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
     return pathBuilder(relativePathParts);
   }
 
+  /**
+   * @return true if a HEAD request on the repository root succeeds
+   */
+  @Override
+  public boolean isAvailable() {
+    HttpHead head = new HttpHead(storagePath);
+    head.setHeader(HttpHeaders.AUTHORIZATION,
+        authenticationHeader().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+    try (CloseableHttpResponse response = httpClient.execute(head)) {
+      return response.getStatusLine().getStatusCode() / 100 == 2;
+    } catch (IOException e) {
+      log.warn("Cannot reach " + storagePath + " " + e.getMessage());
+      return false;
+    }
+  }
+
   @Override
   public boolean isMetadata(String... relativePathParts) {
     try {
@@ -155,8 +282,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   public byte[] getBinary(String... relativePathParts) {
     URI path = URI.create(pathBuilder(relativePathParts));
 
-    RestTemplate restTemplate = builder.build();
-
     try {
 
       if (path.getHost().contains(getAbsoluteLocation("")) ){
@@ -176,6 +301,22 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
 
   }
 
+  /**
+   * Checks the binary exists with a HEAD request, its content is only fetched, as a stream, when
+   * the resource is read
+   */
+  @Override
+  public Resource getBinaryResource(String... relativePathParts) {
+    URI path = URI.create(pathBuilder(relativePathParts));
+    try {
+      HttpHeaders headers = restTemplate
+          .exchange(path, HttpMethod.HEAD, authenticationHeader(), Void.class).getHeaders();
+      return new FedoraBinaryResource(path, headers.getContentLength(), headers.getLastModified());
+    } catch (HttpClientErrorException ex) {
+      throw new ShelfResourceNotFound("Binary resource not found " + path, ex);
+    }
+  }
+
   @Override
   public void saveMetadata(JsonNode node, String... relativePathParts) {
     String path = pathBuilder(relativePathParts);
@@ -184,11 +325,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
     }
     URI destination = URI.create(path);
 
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
-
     log.info("Sending jsonLD node to the store at url " + node.toString());
 
     RequestEntity request = RequestEntity.put(URI.create(destination.toString()))
@@ -205,11 +341,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   @Override
   public void saveBinary(byte[] data, String... relativePathParts) {
     URI destination = URI.create(pathBuilder(relativePathParts));
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
 
     RequestEntity request = RequestEntity.put(destination)
         .header("Authorization", authenticationHeader().getHeaders().getFirst("Authorization"))
@@ -219,20 +350,110 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
     log.info(response.toString());
   }
 
-  private List<String> getAllFedoraDescendants(String start, int maxLevels) {
-    ArrayList<String> descendants = new ArrayList<>();
-    List<String> children;
+  /**
+   * Sends the binary with chunked transfer encoding as it is read from the stream
+   */
+  @Override
+  public void saveBinary(InputStream data, String... relativePathParts) {
+    URI destination = URI.create(pathBuilder(relativePathParts));
+    HttpPut put = new HttpPut(destination);
+    put.setHeader(HttpHeaders.AUTHORIZATION,
+        authenticationHeader().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+    put.setEntity(new InputStreamEntity(new CloseShieldInputStream(data),
+        ContentType.APPLICATION_OCTET_STREAM));
+    try (CloseableHttpResponse response = httpClient.execute(put)) {
+      EntityUtils.consume(response.getEntity());
+      if (response.getStatusLine().getStatusCode() / 100 != 2) {
+        throw new ShelfException("Cannot save binary " + destination + " "
+            + response.getStatusLine());
+      }
+      log.info(response.getStatusLine().toString());
+    } catch (IOException e) {
+      throw new ShelfException("Cannot save binary " + destination, e);
+    }
+  }
+
+  /**
+   * Lists the containers and binaries up to maxDepth levels below a location. With a sparqlEndpoint
+   * on the shelf url the whole tree is read with one query, otherwise each level's containers are
+   * listed in parallel on the store's listingThreads threads.
+   *
+   * @param maxDepth number of levels to descend, 1 lists just the children
+   * @param relativePathParts location to start from
+   * @return descendants relative to the shelf
+   */
+  @Override
+  public List<String> getChildren(int maxDepth, String... relativePathParts) {
+    if (fusekiClient != null) {
+      try {
+        return getDescendantsFromFuseki(maxDepth, relativePathParts);
+      } catch (RuntimeException e) {
+        log.warn("Cannot list descendants from fuseki, walking fcrepo instead " + e.getMessage());
+      }
+    }
+    List<String> descendants = new ArrayList<>();
+    // The start must be listed, or an unreachable fcrepo would look like an empty shelf
+    List<String> level = getChildren(pathBuilder(relativePathParts));
+    List<Future<List<String>>> listings = new ArrayList<>();
+    try {
+      for (int depth = 1; depth <= maxDepth && !level.isEmpty(); depth++) {
+        descendants.addAll(level);
+        if (depth == maxDepth) {
+          break;
+        }
+        listings.clear();
+        for (String container : level) {
+          listings.add(listingExecutor.submit(() -> childrenOfDescendant(container)));
+        }
+        List<String> nextLevel = new ArrayList<>();
+        for (Future<List<String>> listing : listings) {
+          nextLevel.addAll(listing.get());
+        }
+        level = nextLevel;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ShelfException("Interrupted while listing " + pathBuilder(relativePathParts), e);
+    } catch (ExecutionException e) {
+      throw new ShelfException("Cannot list " + pathBuilder(relativePathParts), e.getCause());
+    } finally {
+      // Only this listing's containers are cancelled, the threads are shared
+      listings.forEach(listing -> listing.cancel(true));
+    }
+    return descendants;
+  }
+
+  /**
+   * Children of a container found while walking the tree, where binaries and resources deleted
+   * since their parent was listed have none. Any other failure fails the listing rather than
+   * dropping the subtree.
+   */
+  private List<String> childrenOfDescendant(String location) {
     try {
-      children = getChildren(start);
-    } catch (IllegalArgumentException e) {
-      return descendants;
+      return getChildren(location);
+    } catch (ShelfResourceNotFound e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof HttpClientErrorException
+          && ((HttpClientErrorException) cause).getStatusCode() == HttpStatus.NOT_FOUND) {
+        return Collections.emptyList();
+      }
+      if (cause instanceof IOException) {
+        // A binary, whose content is not json-ld
+        return Collections.emptyList();
+      }
+      throw e;
     }
-    if (maxLevels > 0 && children != null && !children.isEmpty()) {
+  }
 
-      for (String child : children) {
-        descendants.addAll(getAllFedoraDescendants(child, maxLevels - 1));
+  private List<String> getDescendantsFromFuseki(int maxDepth, String... relativePathParts) {
+    String start = pathBuilder(relativePathParts);
+    String startPath = StringUtils.appendIfMissing(start, "/");
+    List<String> descendants = new ArrayList<>();
+    for (String descendant : fusekiClient.getDescendants(start)) {
+      if (descendant.startsWith(startPath)
+          && StringUtils.countMatches(descendant.substring(startPath.length()), '/') < maxDepth) {
+        descendants.add(StringUtils.removeStart(descendant, storagePath));
       }
-      descendants.addAll(children);
     }
     return descendants;
   }
@@ -240,11 +461,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   @Override
   public String createTransaction() {
     URI destination = URI.create(storagePath + "fcr:tx");
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
 
     RequestEntity request = RequestEntity.post(destination)
         .header("Authorization", authenticationHeader().getHeaders().getFirst("Authorization"))
@@ -265,11 +481,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   @Override
   public void commitTransaction(String transactionId) {
     URI destination = URI.create(storagePath + transactionId + "/fcr:tx/fcr:commit");
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
 
     RequestEntity request = RequestEntity.post(destination)
         .header("Authorization", authenticationHeader().getHeaders().getFirst("Authorization"))
@@ -288,11 +499,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   @Override
   public void rollbackTransaction(String transactionId) {
     URI destination = URI.create(storagePath + transactionId + "/fcr:tx/fcr:rollback");
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
 
     RequestEntity request = RequestEntity.post(destination)
         .header("Authorization", authenticationHeader().getHeaders().getFirst("Authorization"))
@@ -340,11 +546,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
             " requested path " + objectURI);
       }
 
-      HttpClient instance = HttpClientBuilder.create()
-          .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-
-      RestTemplate restTemplate = new RestTemplate(
-          new HttpComponentsClientHttpRequestFactory(instance));
 
       HttpEntity<String> entity = new HttpEntity<>("", header);
 
@@ -355,11 +556,7 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
       ResponseEntity<String> response = restTemplate.exchange(objectURI, HttpMethod.GET,
           entity, String.class);
 
-      InputStream ins = new ByteArrayInputStream(response.getBody().getBytes());
-
-      JsonNode node = new ObjectMapper().readTree(ins);
-
-      ins.close();
+      JsonNode node = mappers.jsonReader().readValue(response.getBody());
 
       if (node.isArray()) {
         return (ObjectNode) node.get(0);
@@ -372,11 +569,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   }
 
   public URI createContainer(URI uri) {
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
 
     ResponseEntity<String> response = restTemplate.exchange(uri, HttpMethod.PUT,
         authenticationHeader(), String.class);
@@ -398,10 +590,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   public void createContainer(String... relativePathParts) {
 
     URI destination = URI.create(pathBuilder(relativePathParts));
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
 
     RequestEntity request = RequestEntity.put(URI.create(destination.toString()))
         .header("Prefer", "handling=lenient; received=\"minimal\"")
@@ -415,11 +603,6 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
   @Override
   public void delete(String... relativePathParts) throws ShelfException {
     URI destination = URI.create(pathBuilder(relativePathParts));
-    HttpClient instance = HttpClientBuilder.create()
-        .setRedirectStrategy(new DefaultRedirectStrategy()).build();
-
-    RestTemplate restTemplate = new RestTemplate(
-        new HttpComponentsClientHttpRequestFactory(instance));
 
     try {
       ResponseEntity<String> response = restTemplate.exchange(destination, HttpMethod.DELETE,
@@ -452,5 +635,111 @@ public class FedoraCDOStore implements CompoundDigitalObjectStore {
     return relativePath.toString();
   }
 
+  /**
+   * A binary in fcrepo, streamed straight from the response each time it is read. Ranges are
+   * asked of fcrepo so the bytes before them are never downloaded.
+   */
+  private class FedoraBinaryResource extends AbstractResource implements RangedResource {
+
+    private final URI uri;
+    private volatile long contentLength;
+    private final long lastModified;
 
+    FedoraBinaryResource(URI uri, long contentLength, long lastModified) {
+      this.uri = uri;
+      this.contentLength = contentLength;
+      this.lastModified = lastModified;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      // Closing the content hands the connection back to the pool
+      return execute(get()).getEntity().getContent();
+    }
+
+    @Override
+    public InputStream getInputStream(long position, long count) throws IOException {
+      if (position == 0 && count == contentLength) {
+        return getInputStream();
+      }
+      HttpGet get = get();
+      get.setHeader(HttpHeaders.RANGE, "bytes=" + position + "-" + (position + count - 1));
+      CloseableHttpResponse response = execute(get);
+      InputStream content = response.getEntity().getContent();
+      if (response.getStatusLine().getStatusCode() == HttpStatus.PARTIAL_CONTENT.value()) {
+        return new BoundedInputStream(content, count);
+      }
+      // fcrepo ignored the range and sent the whole binary, so skip to it here and drop the
+      // connection when done rather than reading the rest of the binary to reuse it
+      try {
+        IOUtils.skipFully(content, position);
+      } catch (IOException e) {
+        response.close();
+        throw e;
+      }
+      return new BoundedInputStream(content, count) {
+        @Override
+        public void close() throws IOException {
+          response.close();
+        }
+      };
+    }
+
+    private HttpGet get() {
+      HttpGet get = new HttpGet(uri);
+      get.setHeader(HttpHeaders.AUTHORIZATION,
+          authenticationHeader().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+      return get;
+    }
+
+    private CloseableHttpResponse execute(HttpGet get) throws IOException {
+      CloseableHttpResponse response = httpClient.execute(get);
+      if (response.getStatusLine().getStatusCode() / 100 != 2 || response.getEntity() == null) {
+        response.close();
+        throw new FileNotFoundException(
+            "Binary resource not found " + uri + " " + response.getStatusLine());
+      }
+      return response;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      if (contentLength < 0) {
+        contentLength = rangedLength();
+      }
+      return contentLength;
+    }
+
+    /**
+     * Length of a binary whose HEAD had no Content-Length, from the total of a one byte range
+     */
+    private long rangedLength() throws IOException {
+      HttpGet get = get();
+      get.setHeader(HttpHeaders.RANGE, "bytes=0-0");
+      try (CloseableHttpResponse response = execute(get)) {
+        Header range = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        if (range != null && range.getValue().matches("bytes \\d+-\\d+/\\d+")) {
+          return Long.parseLong(StringUtils.substringAfterLast(range.getValue(), "/"));
+        }
+        if (response.getEntity().getContentLength() >= 0
+            && response.getStatusLine().getStatusCode() != HttpStatus.PARTIAL_CONTENT.value()) {
+          return response.getEntity().getContentLength();
+        }
+      }
+      throw new IOException("Length of " + uri + " is unknown");
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+      if (lastModified < 0) {
+        throw new IOException("Modification time of " + uri + " is unknown");
+      }
+      return lastModified;
+    }
+
+    @Override
+    public String getDescription() {
+      return "Fedora binary [" + uri + "]";
+    }
+  }
 }
@@ -2,22 +2,27 @@ package org.kgrid.shelf.repository;
 
 import static java.nio.file.FileVisitOption.FOLLOW_LINKS;
 
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.kgrid.shelf.ShelfException;
@@ -27,18 +32,46 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 
 @Qualifier("filesystem")
 public class FilesystemCDOStore implements CompoundDigitalObjectStore {
 
+  static final int DEFAULT_METADATA_CACHE_SIZE = 1000;
+
   private URI localStorageURI;
 
+  private final ShelfMappers mappers = ShelfMappers.getDefault();
+
+  private final MetadataCache metadataCache;
+
   private final Logger log = LoggerFactory.getLogger(FilesystemCDOStore.class);
 
+  // Held while a KO already on the shelf is swapped for its new version, see moveIntoShelf
+  private final ReentrantLock replacing = new ReentrantLock();
+  // Odd while a swap is in progress, so reads that miss a KO can tell they may have hit one
+  private final AtomicLong replacements = new AtomicLong();
+
+  /**
+   * @param connectionURI shelf location, e.g. filesystem:file://shelf, optionally followed by
+   *     ?metadataCacheSize=n to change how many parsed metadata files are kept (0 disables caching)
+   */
   public FilesystemCDOStore(
 
       @Value("${kgrid.shelf.cdostore.url:filesystem:file://shelf}") String connectionURI) {
     URI uri = URI.create(connectionURI.substring(connectionURI.indexOf(':') + 1));
+    int metadataCacheSize = DEFAULT_METADATA_CACHE_SIZE;
+    if (uri.getQuery() != null) {
+      String cacheSizeKey = "metadataCacheSize=";
+      for (String parameter : uri.getQuery().split("&")) {
+        if (parameter.startsWith(cacheSizeKey)) {
+          metadataCacheSize = Integer.parseInt(parameter.substring(cacheSizeKey.length()));
+        }
+      }
+      uri = URI.create(uri.toString().substring(0, uri.toString().indexOf("?")));
+    }
+    this.metadataCache = new MetadataCache(metadataCacheSize);
     if (uri.getHost() == null) {
       this.localStorageURI = uri;
     } else {
@@ -58,7 +91,8 @@ public class FilesystemCDOStore implements CompoundDigitalObjectStore {
     return getChildren(1, filePathParts);
   }
 
-  public List<String> getChildren( int maxDepth, String... filePathParts) {
+  @Override
+  public List<String> getChildren(int maxDepth, String... filePathParts) {
     Path path = Paths.get(Paths.get(localStorageURI).toString(), filePathParts);
     List<String> children = new ArrayList<>();
     try {
@@ -87,6 +121,15 @@ public class FilesystemCDOStore implements CompoundDigitalObjectStore {
     return Paths.get(localStorageURI.getPath(), relativePathParts).toString();
   }
 
+  /**
+   * @return true if the shelf directory can be read
+   */
+  @Override
+  public boolean isAvailable() {
+    Path shelf = Paths.get(localStorageURI);
+    return Files.isDirectory(shelf) && Files.isReadable(shelf);
+  }
+
   @Override
   public boolean isMetadata(String... relativePathParts) {
     return relativePathParts[relativePathParts.length - 1]
@@ -96,38 +139,56 @@ public class FilesystemCDOStore implements CompoundDigitalObjectStore {
   @Override
   public ObjectNode getMetadata(String... relativePathParts) {
     Path metadataPath = Paths.get(Paths.get(localStorageURI).toString(), relativePathParts);
-    File metadataFile = metadataPath.toFile();
-    if (metadataFile.isDirectory() || !metadataFile.getPath().endsWith(KnowledgeObject.METADATA_FILENAME)) {
-      metadataFile = metadataPath.resolve(KnowledgeObject.METADATA_FILENAME).toFile();
-    }
+    File metadataFile = metadataPath.toFile().isDirectory()
+        || !metadataPath.toString().endsWith(KnowledgeObject.METADATA_FILENAME)
+        ? metadataPath.resolve(KnowledgeObject.METADATA_FILENAME).toFile()
+        : metadataPath.toFile();
 
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.setSerializationInclusion(Include.NON_NULL);
-    JsonNode koMetadata;
-    try {
-      koMetadata = mapper.readTree(metadataFile);
-      if (koMetadata.isArray()) {
-        // Parent object in json-ld is array, get first element.
-        koMetadata = koMetadata.get(0);
+    return readDuringReplace(() -> {
+      try {
+        return metadataCache.get(metadataFile.toPath(), () -> {
+          JsonNode koMetadata = mappers.jsonReader().readValue(metadataFile);
+          if (koMetadata.isArray()) {
+            // Parent object in json-ld is array, get first element.
+            koMetadata = koMetadata.get(0);
+          }
+          return ((ObjectNode) koMetadata);
+        });
+      } catch (Exception ioEx) {
+        throw new ShelfResourceNotFound(
+            "Metadata resource not found " + metadataPath, ioEx);
       }
+    });
+  }
 
-      return ((ObjectNode) koMetadata);
-    } catch (Exception ioEx) {
-      throw new ShelfResourceNotFound(
-          "Metadata resource not found " + metadataPath, ioEx);
-    }
+  MetadataCache getMetadataCache() {
+    return metadataCache;
   }
 
   @Override
   public byte[] getBinary(String... relativePathParts) {
     Path binaryPath = Paths.get(Paths.get(localStorageURI).toString(), relativePathParts);
-    byte[] bytes = null;
-    try {
-      bytes = Files.readAllBytes(binaryPath);
-    } catch (IOException ioEx) {
-      throw new ShelfResourceNotFound("Binary resource not found " + binaryPath, ioEx);
-    }
-    return bytes;
+    return readDuringReplace(() -> {
+      try {
+        return Files.readAllBytes(binaryPath);
+      } catch (IOException ioEx) {
+        throw new ShelfResourceNotFound("Binary resource not found " + binaryPath, ioEx);
+      }
+    });
+  }
+
+  @Override
+  public Resource getBinaryResource(String... relativePathParts) {
+    Path binaryPath = Paths.get(Paths.get(localStorageURI).toString(), relativePathParts);
+    readDuringReplace(() -> {
+      if (!Files.isRegularFile(binaryPath)) {
+        throw new ShelfResourceNotFound("Binary resource not found " + binaryPath);
+      }
+      return binaryPath;
+    });
+    // Its readable channel is a FileChannel, letting callers transfer the file without copying it
+    // through the heap
+    return new ReplaceableFileResource(binaryPath);
   }
 
   @Override
@@ -137,9 +198,9 @@ public class FilesystemCDOStore implements CompoundDigitalObjectStore {
     if (metadataFile.isDirectory()) {
       metadataFile = metadataPath.resolve(KnowledgeObject.METADATA_FILENAME).toFile();
     }
+    metadataCache.invalidate(metadataFile.toPath());
     try {
-      ObjectWriter writer = new ObjectMapper().writer().with(SerializationFeature.INDENT_OUTPUT);
-      writer.writeValue(metadataFile, metadata);
+      mappers.prettyJsonWriter().writeValue(metadataFile, metadata);
     } catch (IOException ioEx) {
       log.error("Could not write to file at " + metadataPath + " " + ioEx);
     }
@@ -157,6 +218,18 @@ public class FilesystemCDOStore implements CompoundDigitalObjectStore {
      }
   }
 
+  @Override
+  public void saveBinary(InputStream data, String... relativePathParts) {
+    Path dataPath = Paths.get(Paths.get(localStorageURI).toString(), relativePathParts);
+    try {
+      Files.createDirectories(dataPath.getParent());
+      Files.copy(data, dataPath, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException ioEx) {
+      log.error("Could not write to file at {}", dataPath );
+      throw new ShelfException("Could not write to file at " + dataPath, ioEx);
+    }
+  }
+
   private void createKOFolderStructure(Path resourceLocation, Path serviceLocation) {
     Path shelf = Paths.get(localStorageURI);
 
@@ -182,6 +255,7 @@ public class FilesystemCDOStore implements CompoundDigitalObjectStore {
   @Override
   public void delete(String... relativePathParts) throws ShelfException {
     Path path = Paths.get(Paths.get(localStorageURI).toString(), relativePathParts);
+    metadataCache.invalidateAll(path);
     try {
       FileUtils.deleteDirectory(new File(path.toString()));
     } catch (IOException e) {
@@ -198,17 +272,123 @@ public class FilesystemCDOStore implements CompoundDigitalObjectStore {
     return trxID;
   }
 
+  /**
+   * Moves each KO folder staged in the transaction into the shelf with an atomic rename, so a KO
+   * is never visible half written. The transaction folder is in the shelf folder, so the rename
+   * never crosses devices.
+   *
+   * @param transactionID transaction folder in the shelf
+   */
   @Override
   public void commitTransaction(String transactionID) {
-    File tempFolder = new File(localStorageURI.getPath(), transactionID);
+    Path shelf = Paths.get(localStorageURI);
+    Path trxFolder = shelf.resolve(transactionID);
+    String[] committed = trxFolder.toFile().list();
     try {
-      FileUtils.copyDirectory(tempFolder, new File(localStorageURI));
-      FileUtils.deleteDirectory(tempFolder);
+      if (committed != null) {
+        for (String folder : committed) {
+          moveIntoShelf(trxFolder, trxFolder.resolve(folder), shelf.resolve(folder));
+          // After the swap, so metadata parsed from the old folder meanwhile is not kept
+          metadataCache.invalidateAll(shelf.resolve(folder));
+        }
+      }
+      FileUtils.deleteDirectory(trxFolder.toFile());
     } catch (IOException e) {
-      log.warn("Cannot copy files from temp directory to shelf " + e);
+      throw new ShelfException("Cannot move files from transaction " + transactionID
+          + " to shelf", e);
+    }
+  }
+
+  /**
+   * A folder can't be renamed over a folder that isn't empty, so a KO already on the shelf is first
+   * renamed into the transaction folder and deleted with it. Between the two renames the KO is
+   * missing from the shelf folder; reads through this store that miss it then wait for the swap
+   * and retry, but other processes reading the shelf folder directly can see it missing.
+   */
+  private void moveIntoShelf(Path trxFolder, Path staged, Path target) throws IOException {
+    if (!Files.exists(target)) {
+      Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+      return;
+    }
+    Path replaced = trxFolder.resolve(".replaced-" + target.getFileName());
+    replacing.lock();
+    replacements.incrementAndGet();
+    try {
+      Files.move(target, replaced, StandardCopyOption.ATOMIC_MOVE);
+      try {
+        Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        // Put the previous version back rather than leave the shelf without it
+        Files.move(replaced, target, StandardCopyOption.ATOMIC_MOVE);
+        throw e;
+      }
+    } finally {
+      replacements.incrementAndGet();
+      replacing.unlock();
+    }
+  }
+
+  /**
+   * Runs a read, retrying it once after any swap in moveIntoShelf that it may have run into
+   */
+  private <T> T readDuringReplace(Supplier<T> read) {
+    long before = replacements.get();
+    try {
+      return read.get();
+    } catch (ShelfResourceNotFound e) {
+      if (before % 2 == 0 && replacements.get() == before) {
+        throw e;
+      }
+      replacing.lock();
+      replacing.unlock();
+      return read.get();
     }
   }
 
+  /**
+   * A file in the shelf whose stream or channel is opened with the same wait and retry as the
+   * store's own reads, since it is opened later and can meet a replacement of its KO
+   */
+  private class ReplaceableFileResource extends FileSystemResource {
+
+    ReplaceableFileResource(Path path) {
+      super(path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return open(super::getInputStream);
+    }
+
+    @Override
+    public ReadableByteChannel readableChannel() throws IOException {
+      return open(super::readableChannel);
+    }
+
+    private <T> T open(IOSupplier<T> opener) throws IOException {
+      try {
+        return readDuringReplace(() -> {
+          try {
+            return opener.get();
+          } catch (FileNotFoundException | NoSuchFileException e) {
+            throw new ShelfResourceNotFound("Binary resource not found " + getPath(), e);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (ShelfResourceNotFound e) {
+        throw (IOException) e.getCause();
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  private interface IOSupplier<T> {
+
+    T get() throws IOException;
+  }
+
   @Override
   public void rollbackTransaction(String transactionID) {
     File tempFolder = new File(localStorageURI.getPath(), transactionID);
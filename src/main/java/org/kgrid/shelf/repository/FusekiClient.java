@@ -1,29 +1,42 @@
 package org.kgrid.shelf.repository;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.arq.querybuilder.ConstructBuilder;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.ResultSet;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
 import org.apache.jena.sparql.lang.sparql_11.ParseException;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
 import org.kgrid.shelf.ShelfException;
 import org.kgrid.shelf.domain.ArkId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -34,12 +47,22 @@ public class FusekiClient {
   private static final Logger log = LoggerFactory.getLogger(FusekiClient.class);
 
   private static final String SUBJ = "?x";
+  private static final String ARK = "ark";
   private static final String KNOWLEDGE_OBJECT_TYPE = "<http://kgrid.org/koio#KnowledgeObject>";
   private static final String IMPLEMENTATION_TYPE = "<http://kgrid.org/koio#Implementation>";
   private static final URI KO_CONTEXT = URI.create("http://kgrid.org/koio/contexts/knowledgeobject.jsonld");
   private static final URI IMPL_CONTEXT = URI.create("http://kgrid.org/koio/contexts/implementation.jsonld");
   private static final String CONTEXT = "@context";
   private static final String ID = "@id";
+  private static final String GRAPH = "@graph";
+
+  private final ShelfMappers mappers = ShelfMappers.getDefault();
+  // Parsed koio contexts, read once from the classpath copy if there is one or else the web
+  private final Map<URI, JsonNode> contexts = new ConcurrentHashMap<>();
+  // Queries built from the contexts, paged on a copy for each call
+  private final Map<String, Query> queries = new ConcurrentHashMap<>();
+  // Query strings with an ark parameter, bound into a copy on each call
+  private final Map<String, ParameterizedSparqlString> arkQueries = new ConcurrentHashMap<>();
 
   public FusekiClient(
       @Value("${kgrid.shelf.fuseki.url:http://localhost:8080/fuseki/test/query}") String fusekiURI) {
@@ -48,60 +71,125 @@ public class FusekiClient {
   }
 
   public JsonNode getAllKnowledgeObjects() {
-    Query allKOIDsQuery = getGraphUsingContext(KNOWLEDGE_OBJECT_TYPE, KO_CONTEXT).build();
+    Query allKOIDsQuery = query("allKnowledgeObjects",
+        () -> getGraphUsingContext(KNOWLEDGE_OBJECT_TYPE, KO_CONTEXT).build());
+
+    return getObjectGraph(allKOIDsQuery, KO_CONTEXT);
+  }
+
+  /**
+   * One page of the knowledge objects, ordered by their fcrepo uri
+   *
+   * @param offset number of knowledge objects to skip
+   * @param limit most knowledge objects to return
+   * @return json-ld graph of the page
+   */
+  public JsonNode getAllKnowledgeObjects(long offset, long limit) {
+    Query pageQuery = query("knowledgeObjectPage",
+        () -> getPageUsingContext(KNOWLEDGE_OBJECT_TYPE, KO_CONTEXT).build());
 
-    return getObjectGraph(allKOIDsQuery);
+    return getObjectGraph(page(pageQuery, offset, limit), KO_CONTEXT);
   }
 
   public JsonNode getAllKnowledgeObjectImpls() {
-    Query allImplsQuery = getGraphUsingContext(IMPLEMENTATION_TYPE, IMPL_CONTEXT).build();
+    Query allImplsQuery = query("allImplementations",
+        () -> getGraphUsingContext(IMPLEMENTATION_TYPE, IMPL_CONTEXT).build());
 
-    return getObjectGraph(allImplsQuery);
+    return getObjectGraph(allImplsQuery, IMPL_CONTEXT);
+  }
+
+  /**
+   * One page of the implementations of every knowledge object, ordered by their fcrepo uri
+   *
+   * @param offset number of implementations to skip
+   * @param limit most implementations to return
+   * @return json-ld graph of the page
+   */
+  public JsonNode getAllKnowledgeObjectImpls(long offset, long limit) {
+    Query pageQuery = query("implementationPage",
+        () -> getPageUsingContext(IMPLEMENTATION_TYPE, IMPL_CONTEXT).build());
+
+    return getObjectGraph(page(pageQuery, offset, limit), IMPL_CONTEXT);
   }
 
   public JsonNode getImplGraphOfKO(ArkId arkId) {
-    try {
-      Query koImplsQuery = getGraphUsingContext(IMPLEMENTATION_TYPE, IMPL_CONTEXT)
-          .addWhere(SUBJ, "<http://fedora.info/definitions/v4/repository#hasParent>", "?parent")
-          .addFilter("strends(str(?parent), \"" + arkId.getDashArk() + "\")").build();
-      return getObjectGraph(koImplsQuery);
-    } catch (ParseException e) {
-      log.warn(e.getMessage());
-      throw new ShelfException(e);
-    }
+    ParameterizedSparqlString koImplsQuery = arkQuery("implementationGraphOfKO", () -> {
+      try {
+        return getGraphUsingContext(IMPLEMENTATION_TYPE, IMPL_CONTEXT)
+            .addWhere(SUBJ, "<http://fedora.info/definitions/v4/repository#hasParent>", "?parent")
+            .addFilter("strends(str(?parent), ?" + ARK + ")").build();
+      } catch (ParseException e) {
+        log.warn(e.getMessage());
+        throw new ShelfException(e);
+      }
+    });
+    return getObjectGraph(withArk(koImplsQuery, arkId), IMPL_CONTEXT);
   }
 
   public List<String> getImplListOfKO(ArkId arkId) {
-    try {
-      Query koImplsQuery = getListUsingContext(IMPLEMENTATION_TYPE, IMPL_CONTEXT)
-          .addWhere(SUBJ, "<http://fedora.info/definitions/v4/repository#hasParent>", "?parent")
-          .addFilter("strends(str(?parent), \"" + arkId.getDashArk() + "\")").build();
-      return getList(koImplsQuery);
-    } catch (ParseException e) {
-      log.warn(e.getMessage());
-      throw new ShelfException(e);
-    }
+    ParameterizedSparqlString koImplsQuery = arkQuery("implementationListOfKO", () -> {
+      try {
+        return getListOfType(IMPLEMENTATION_TYPE)
+            .addWhere(SUBJ, "<http://fedora.info/definitions/v4/repository#hasParent>", "?parent")
+            .addFilter("strends(str(?parent), ?" + ARK + ")").build();
+      } catch (ParseException e) {
+        log.warn(e.getMessage());
+        throw new ShelfException(e);
+      }
+    });
+    return getList(withArk(koImplsQuery, arkId));
+  }
+  /**
+   * Every resource below a fcrepo container, found through their hasParent triples
+   *
+   * @param containerURI absolute uri of the container
+   * @return absolute uris of the container's descendants
+   */
+  public List<String> getDescendants(String containerURI) {
+    ParameterizedSparqlString descendantsQuery = new ParameterizedSparqlString(
+        "SELECT " + SUBJ + " WHERE { " + SUBJ
+            + " <http://fedora.info/definitions/v4/repository#hasParent>+ ?container }");
+    descendantsQuery.setIri("container", containerURI);
+    return getList(descendantsQuery.asQuery());
   }
 
-  private JsonNode getObjectGraph(Query query) {
-    QueryExecution execution = QueryExecutionFactory
-        .sparqlService(fusekiServerURI.toString(), query);
-
-    Model model;
-    try {
-      model = execution.execConstruct();
+  /**
+   * Reads the constructed triples as they arrive and gathers them into one json-ld node per
+   * subject, keyed by the context's terms, so the graph is never held as a model or string too
+   */
+  private JsonNode getObjectGraph(Query query, URI contextURI) {
+    Map<String, String> terms = getTermsOfContext(contextURI);
+    Map<String, ObjectNode> subjects = new LinkedHashMap<>();
+    try (QueryExecution execution = QueryExecutionFactory
+        .sparqlService(fusekiServerURI.toString(), query)) {
+      Iterator<Triple> triples = execution.execConstructTriples();
+      while (triples.hasNext()) {
+        Triple triple = triples.next();
+        ObjectNode subject = subjects.computeIfAbsent(triple.getSubject().toString(),
+            id -> mappers.nodeFactory().objectNode().put(ID, id));
+        String predicate = triple.getPredicate().getURI();
+        addValue(subject, terms.getOrDefault(predicate, predicate), triple.getObject());
+      }
     } catch (QueryExceptionHTTP e) {
       throw new ShelfException("Cannot fetch object list from fuseki. " + e);
     }
 
-    StringWriter modelString = new StringWriter();
-    model.write(modelString, RDFLanguages.strLangJSONLD);
-    try {
-      JsonNode node = new ObjectMapper().readTree(modelString.toString());
-      return node;
-    } catch (IOException e) {
-      log.warn("Cannot read in model from fuseki " + e);
-      throw new ShelfException(e);
+    ObjectNode graph = mappers.nodeFactory().objectNode();
+    graph.put(CONTEXT, contextURI.toString());
+    graph.putArray(GRAPH).addAll(subjects.values());
+    return graph;
+  }
+
+  private void addValue(ObjectNode subject, String term, Node object) {
+    JsonNode value = mappers.nodeFactory().textNode(
+        object.isLiteral() ? object.getLiteralLexicalForm() : object.toString());
+    JsonNode existing = subject.get(term);
+    if (existing == null) {
+      subject.set(term, value);
+    } else if (existing.isArray()) {
+      ((ArrayNode) existing).add(value);
+    } else {
+      subject.putArray(term).add(existing).add(value);
     }
   }
 
@@ -122,19 +210,90 @@ public class FusekiClient {
     return list;
   }
 
+  private Query query(String name, Supplier<Query> builder) {
+    return queries.computeIfAbsent(name, key -> builder.get());
+  }
+
+  private ParameterizedSparqlString arkQuery(String name, Supplier<Query> builder) {
+    return arkQueries.computeIfAbsent(name,
+        key -> new ParameterizedSparqlString(builder.get().toString()));
+  }
+
+  private Query page(Query template, long offset, long limit) {
+    Query page = template.cloneQuery();
+    ElementWalker.walk(page.getQueryPattern(), new ElementVisitorBase() {
+      @Override
+      public void visit(ElementSubQuery subQuery) {
+        subQuery.getQuery().setOffset(offset);
+        subQuery.getQuery().setLimit(limit);
+      }
+    });
+    return page;
+  }
+
+  private Query withArk(ParameterizedSparqlString template, ArkId arkId) {
+    ParameterizedSparqlString query = template.copy();
+    query.setLiteral(ARK, arkId.getDashArk());
+    return query.asQuery();
+  }
+
   private JsonNode getContextForURI(URI contextURI) {
-    try {
-      ObjectMapper mapper = new ObjectMapper();
-      return mapper.readTree(contextURI.toURL());
+    return contexts.computeIfAbsent(contextURI, this::readContext);
+  }
 
+  /**
+   * Reads a context from the classpath at its url path (e.g. koio/contexts/knowledgeobject.jsonld)
+   * when a copy is bundled there, so the shelf can query fuseki offline, otherwise from its url
+   */
+  private JsonNode readContext(URI contextURI) {
+    Resource localCopy = new ClassPathResource(StringUtils.removeStart(contextURI.getPath(), "/"));
+    try (InputStream context =
+        localCopy.exists() ? localCopy.getInputStream() : contextURI.toURL().openStream()) {
+      return mappers.jsonReader().readTree(context);
     } catch (IOException e) {
       throw new ShelfException(e);
     }
   }
 
+  /**
+   * Context term of each predicate uri
+   */
+  private Map<String, String> getTermsOfContext(URI contextURI) {
+    Map<String, String> terms = new HashMap<>();
+    getContextForURI(contextURI).get(CONTEXT).fields().forEachRemaining(entry -> {
+      if (entry.getValue().has(ID)) {
+        terms.put(entry.getValue().get(ID).asText(), entry.getKey());
+      }
+    });
+    return terms;
+  }
+
   private ConstructBuilder getGraphUsingContext(String type, URI contextURI) {
 
     ConstructBuilder constructBuilder = new ConstructBuilder();
+    // a works instead of <http://www.w3.org/1999/02/22-rdf-syntax-ns#type>, not quite sure why
+    constructBuilder.addWhere(SUBJ, "a", type);
+    addContextFields(constructBuilder, contextURI);
+    return constructBuilder;
+  }
+
+  /**
+   * Like getGraphUsingContext, for a page of subjects picked by an ordered sub query whose limit
+   * and offset are set on a copy for each page
+   */
+  private ConstructBuilder getPageUsingContext(String type, URI contextURI) {
+
+    ConstructBuilder constructBuilder = new ConstructBuilder();
+    constructBuilder.addSubQuery(new SelectBuilder()
+        .addVar(SUBJ)
+        .addWhere(SUBJ, "a", type)
+        .addOrderBy(SUBJ)
+        .setLimit(1));
+    addContextFields(constructBuilder, contextURI);
+    return constructBuilder;
+  }
+
+  private void addContextFields(ConstructBuilder constructBuilder, URI contextURI) {
     JsonNode ctx = getContextForURI(contextURI);
     JsonNode fields = ctx.get(CONTEXT);
     Iterator<Entry<String, JsonNode>> iter = fields.fields();
@@ -147,24 +306,16 @@ public class FusekiClient {
             "?" + entry.getKey());
       }
     }
-    // a works instead of <http://www.w3.org/1999/02/22-rdf-syntax-ns#type>, not quite sure why
-    constructBuilder.addWhere(SUBJ, "a", type);
-    return constructBuilder;
   }
 
-  private SelectBuilder getListUsingContext(String type, URI contextURI) {
+  /**
+   * Distinct subjects of a type, without their fields, which would multiply the rows returned
+   */
+  private SelectBuilder getListOfType(String type) {
 
-    SelectBuilder selectBuilder = new SelectBuilder();
-    JsonNode ctx = getContextForURI(contextURI);
-    JsonNode fields = ctx.get(CONTEXT);
-    Iterator<Entry<String, JsonNode>> iter = fields.fields();
-    while (iter.hasNext()) {
-      Entry<String, JsonNode> entry = iter.next();
-      if (entry.getValue().has(ID)) {
-            selectBuilder.addOptional(SUBJ, "<" + entry.getValue().get(ID).asText() + ">",
-                "?" + entry.getKey());
-      }
-    }
+    SelectBuilder selectBuilder = new SelectBuilder()
+        .setDistinct(true)
+        .addVar(SUBJ);
     // a works instead of <http://www.w3.org/1999/02/22-rdf-syntax-ns#type>, not quite sure why
     selectBuilder.addWhere(SUBJ, "a", type);
     return selectBuilder;
@@ -0,0 +1,41 @@
+package org.kgrid.shelf.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes that all running zip imports together may hold in memory. An import that can't reserve
+ * more spills to a temporary file instead of waiting, so imports never block on each other.
+ */
+final class ImportMemoryBudget {
+
+  private final long maxBytes;
+  private final AtomicLong available;
+
+  ImportMemoryBudget(long maxBytes) {
+    this.maxBytes = Math.max(0, maxBytes);
+    this.available = new AtomicLong(this.maxBytes);
+  }
+
+  boolean tryReserve(long bytes) {
+    long current;
+    do {
+      current = available.get();
+      if (current < bytes) {
+        return false;
+      }
+    } while (!available.compareAndSet(current, current - bytes));
+    return true;
+  }
+
+  void release(long bytes) {
+    available.addAndGet(bytes);
+  }
+
+  long getAvailable() {
+    return available.get();
+  }
+
+  long getMaxBytes() {
+    return maxBytes;
+  }
+}
@@ -0,0 +1,155 @@
+package org.kgrid.shelf.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.commons.io.IOUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Binaries read from one zip import, held until the KO metadata has been found and they can be
+ * written into the import transaction. A binary stays in memory while the shared {@link
+ * ImportMemoryBudget} allows and is spilled to a temporary file otherwise. Binaries in memory are
+ * kept as the chunks they were read in, so they hold exactly the bytes reserved for them.
+ */
+final class ImportStaging implements Closeable {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final ImportMemoryBudget budget;
+  private final Map<String, StagedBinary> binaries = new LinkedHashMap<>();
+
+  ImportStaging(ImportMemoryBudget budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * Reads a binary to the end of the stream, without closing it
+   *
+   * @param name path of the binary in the zip
+   * @param data contents of the binary
+   * @throws IOException if the binary can't be read or spilled
+   */
+  void stage(String name, InputStream data) throws IOException {
+    StagedBinary previous = binaries.put(name, read(data));
+    if (previous != null) {
+      previous.discard();
+    }
+  }
+
+  Map<String, StagedBinary> getBinaries() {
+    return Collections.unmodifiableMap(binaries);
+  }
+
+  /**
+   * Hands back the memory reserved by the staged binaries and deletes their temporary files
+   */
+  @Override
+  public void close() {
+    binaries.values().forEach(StagedBinary::discard);
+    binaries.clear();
+  }
+
+  private StagedBinary read(InputStream data) throws IOException {
+    List<byte[]> chunks = new ArrayList<>();
+    byte[] chunk = new byte[CHUNK_SIZE];
+    long reserved = 0;
+    try {
+      int read;
+      while ((read = IOUtils.read(data, chunk)) > 0) {
+        if (!budget.tryReserve(read)) {
+          try {
+            return spill(chunks, chunk, read, data);
+          } finally {
+            budget.release(reserved);
+            reserved = 0;
+          }
+        }
+        reserved += read;
+        if (read == chunk.length) {
+          chunks.add(chunk);
+          chunk = new byte[CHUNK_SIZE];
+        } else {
+          chunks.add(Arrays.copyOf(chunk, read));
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      budget.release(reserved);
+      throw e;
+    }
+    return new StagedBinary(chunks, reserved, null);
+  }
+
+  /**
+   * Writes what was read so far and the rest of the stream to a temporary file. The caller
+   * releases the memory reserved for the chunks read so far.
+   */
+  private StagedBinary spill(List<byte[]> chunks, byte[] chunk, int read, InputStream data)
+      throws IOException {
+    Path file = Files.createTempFile("kgrid-import-", ".tmp");
+    try (OutputStream out = Files.newOutputStream(file)) {
+      for (byte[] staged : chunks) {
+        out.write(staged);
+      }
+      chunks.clear();
+      out.write(chunk, 0, read);
+      StreamUtils.copy(data, out);
+    } catch (IOException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return new StagedBinary(Collections.emptyList(), 0, file);
+  }
+
+  /**
+   * A binary held either in memory or in a temporary file
+   */
+  final class StagedBinary {
+
+    private final List<byte[]> chunks;
+    private final long reserved;
+    private final Path file;
+
+    private StagedBinary(List<byte[]> chunks, long reserved, Path file) {
+      this.chunks = chunks;
+      this.reserved = reserved;
+      this.file = file;
+    }
+
+    InputStream open() throws IOException {
+      if (file != null) {
+        return Files.newInputStream(file);
+      }
+      return new SequenceInputStream(Collections.enumeration(chunks.stream()
+          .map(ByteArrayInputStream::new)
+          .collect(Collectors.toList())));
+    }
+
+    boolean isSpilled() {
+      return file != null;
+    }
+
+    private void discard() {
+      budget.release(reserved);
+      if (file != null) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          file.toFile().deleteOnExit();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package org.kgrid.shelf.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.kgrid.shelf.domain.ArkId;
+
+/**
+ * Lookup tables for the objects on a shelf. Reads never block and never see a structure in the
+ * middle of a rebuild: a full rebuild fills a new index and publishes it in one step, while single
+ * object updates go straight into the concurrent maps of the published index.
+ *
+ * <p>Objects restored from a snapshot are added without their metadata, which is read through the
+ * loader the first time the objects are listed.
+ */
+final class KnowledgeObjectIndex {
+
+  // Map of Ark -> Version -> File Location for rapid object lookup, newest version first
+  private final ConcurrentMap<String, ConcurrentNavigableMap<String, String>> objectLocations =
+      new ConcurrentHashMap<>();
+  // Map of File Location -> Ark and version stored there, so a folder is removed without a scan
+  private final ConcurrentMap<String, ArkId> locationArks = new ConcurrentHashMap<>();
+  // Map of Ark -> Metadata location for displaying to end user, in ark id order for paging
+  private final ConcurrentNavigableMap<ArkId, JsonNode> knowledgeObjects =
+      new ConcurrentSkipListMap<>();
+  // Ark -> location of objects whose metadata has not been read yet
+  private final ConcurrentMap<ArkId, String> unloaded = new ConcurrentHashMap<>();
+  // Reads the metadata of an unloaded object from its location
+  private final Function<String, JsonNode> metadataLoader;
+  // Number of objects in knowledgeObjects and unloaded, as size() on the skip list walks it
+  private final AtomicInteger size = new AtomicInteger();
+  // Map of File Location -> metadata modification time when the location was indexed
+  private final ConcurrentMap<String, Long> modified = new ConcurrentHashMap<>();
+
+  KnowledgeObjectIndex() {
+    this(location -> {
+      throw new IllegalStateException("No metadata loader for " + location);
+    });
+  }
+
+  KnowledgeObjectIndex(Function<String, JsonNode> metadataLoader) {
+    this.metadataLoader = metadataLoader;
+  }
+
+  /**
+   * Adds or replaces one version of an object
+   *
+   * @param arkId ark id of the version
+   * @param location folder of the version relative to the shelf
+   * @param metadata metadata of the version
+   * @param lastModified modification time of the metadata when it was read
+   * @return location previously held by this version, or null
+   */
+  String put(ArkId arkId, String location, JsonNode metadata, long lastModified) {
+    String previous = objectLocations
+        .computeIfAbsent(arkId.getDashArk(),
+            ark -> new ConcurrentSkipListMap<>(Collections.reverseOrder()))
+        .put(arkId.getVersion(), location);
+    moveLocation(arkId, previous, location);
+    boolean wasUnloaded = unloaded.remove(arkId) != null;
+    if (knowledgeObjects.put(arkId, metadata) == null && !wasUnloaded) {
+      size.incrementAndGet();
+    }
+    modified.put(location, lastModified);
+    return previous;
+  }
+
+  /**
+   * Adds one version of an object whose metadata is only read when the objects are listed
+   *
+   * @param arkId ark id of the version
+   * @param location folder of the version relative to the shelf
+   * @param lastModified modification time of the metadata when it was last read
+   */
+  void putUnloaded(ArkId arkId, String location, long lastModified) {
+    String previous = objectLocations
+        .computeIfAbsent(arkId.getDashArk(),
+            ark -> new ConcurrentSkipListMap<>(Collections.reverseOrder()))
+        .put(arkId.getVersion(), location);
+    moveLocation(arkId, previous, location);
+    if (!knowledgeObjects.containsKey(arkId) && unloaded.put(arkId, location) == null) {
+      size.incrementAndGet();
+    }
+    modified.put(location, lastModified);
+  }
+
+  private void moveLocation(ArkId arkId, String previous, String location) {
+    if (previous != null && !previous.equals(location)) {
+      locationArks.remove(previous, arkId);
+    }
+    locationArks.put(location, arkId);
+  }
+
+  void remove(ArkId arkId) {
+    Map<String, String> versions = objectLocations.get(arkId.getDashArk());
+    if (versions != null) {
+      String location = versions.remove(arkId.getVersion());
+      if (location != null) {
+        modified.remove(location);
+        locationArks.remove(location, arkId);
+      }
+      if (versions.isEmpty()) {
+        objectLocations.remove(arkId.getDashArk(), versions);
+      }
+    }
+    forget(arkId);
+  }
+
+  private void forget(ArkId arkId) {
+    boolean wasUnloaded = unloaded.remove(arkId) != null;
+    if (knowledgeObjects.remove(arkId) != null | wasUnloaded) {
+      size.decrementAndGet();
+    }
+  }
+
+  /**
+   * Removes every version stored in the given folder
+   *
+   * @param location folder relative to the shelf
+   */
+  void removeLocation(String location) {
+    modified.remove(location);
+    ArkId arkId = locationArks.remove(location);
+    if (arkId == null) {
+      return;
+    }
+    Map<String, String> versions = objectLocations.get(arkId.getDashArk());
+    if (versions != null && versions.remove(arkId.getVersion(), location)) {
+      if (versions.isEmpty()) {
+        objectLocations.remove(arkId.getDashArk(), versions);
+      }
+      forget(arkId);
+    }
+  }
+
+  /**
+   * @param arkId version ark id
+   * @return folder of the version relative to the shelf, or null if it is not on the shelf
+   */
+  String getLocation(ArkId arkId) {
+    Map<String, String> versions = objectLocations.get(arkId.getDashArk());
+    return versions == null ? null : versions.get(arkId.getVersion());
+  }
+
+  /**
+   * @param dashArk ark in naan-name form
+   * @return read only view of version -> folder, newest version first, or null if not on the
+   *     shelf
+   */
+  Map<String, String> getVersions(String dashArk) {
+    Map<String, String> versions = objectLocations.get(dashArk);
+    return versions == null ? null : Collections.unmodifiableMap(versions);
+  }
+
+  /**
+   * @param location folder relative to the shelf
+   * @return metadata modification time recorded when the folder was indexed, or -1
+   */
+  long getModified(String location) {
+    return modified.getOrDefault(location, -1L);
+  }
+
+  /**
+   * @return number of objects in the index, without walking it
+   */
+  int size() {
+    return size.get();
+  }
+
+  /**
+   * Visits the location of every object, without reading any unloaded metadata
+   */
+  void forEachLocation(BiConsumer<ArkId, String> action) {
+    objectLocations.forEach((ark, versions) -> versions.forEach((version, location) ->
+        action.accept(version.isEmpty()
+            ? ArkId.create(ark) : ArkId.create(ark + "/" + version), location)));
+  }
+
+  Map<ArkId, JsonNode> getKnowledgeObjects() {
+    loadMetadata();
+    return Collections.unmodifiableMap(knowledgeObjects);
+  }
+
+  /**
+   * @param after ark id to start after, or null to start at the first object
+   * @return read only view of the objects after the given ark id, in ark id order
+   */
+  NavigableMap<ArkId, JsonNode> getKnowledgeObjectsAfter(ArkId after) {
+    loadMetadata();
+    return Collections.unmodifiableNavigableMap(
+        after == null ? knowledgeObjects : knowledgeObjects.tailMap(after, false));
+  }
+
+  /**
+   * Reads the metadata of the objects restored without it, dropping any that can't be read
+   */
+  private void loadMetadata() {
+    if (unloaded.isEmpty()) {
+      return;
+    }
+    synchronized (unloaded) {
+      for (Entry<ArkId, String> object : unloaded.entrySet()) {
+        JsonNode metadata;
+        try {
+          metadata = metadataLoader.apply(object.getValue());
+        } catch (RuntimeException e) {
+          remove(object.getKey());
+          continue;
+        }
+        // Atomic with removals, so an object deleted meanwhile is not brought back
+        unloaded.computeIfPresent(object.getKey(), (arkId, location) -> {
+          knowledgeObjects.putIfAbsent(arkId, metadata);
+          return null;
+        });
+      }
+    }
+  }
+}
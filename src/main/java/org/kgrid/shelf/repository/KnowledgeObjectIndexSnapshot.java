@@ -0,0 +1,122 @@
+package org.kgrid.shelf.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.kgrid.shelf.domain.ArkId;
+import org.kgrid.shelf.domain.KnowledgeObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ark ids and folders of the shelf index kept in a file at the shelf root, so a restart only has to
+ * read the metadata of folders whose metadata.json changed since the snapshot was written. The
+ * metadata of the other folders is read when the shelf is first listed.
+ */
+final class KnowledgeObjectIndexSnapshot {
+
+  static final String SNAPSHOT_FILENAME = ".shelf-index.json";
+  private static final int FORMAT_VERSION = 2;
+
+  private final Logger log = LoggerFactory.getLogger(KnowledgeObjectIndexSnapshot.class);
+  private final ShelfMappers mappers;
+  private final Path shelf;
+  private final Path snapshotFile;
+
+  KnowledgeObjectIndexSnapshot(Path shelf, ShelfMappers mappers) {
+    this.shelf = shelf;
+    this.mappers = mappers;
+    this.snapshotFile = shelf.resolve(SNAPSHOT_FILENAME);
+  }
+
+  /**
+   * @param folderName KO folder relative to the shelf
+   * @return modification time of the folder's metadata.json in millis, or -1 if it can't be read
+   */
+  long lastModified(String folderName) {
+    try {
+      return Files.getLastModifiedTime(
+          shelf.resolve(folderName).resolve(KnowledgeObject.METADATA_FILENAME)).toMillis();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Reads the last snapshot written for this shelf
+   *
+   * @return folder -> indexed entry, empty if there is no usable snapshot
+   */
+  Map<String, Entry> read() {
+    if (!Files.isRegularFile(snapshotFile)) {
+      return Collections.emptyMap();
+    }
+    try {
+      JsonNode snapshot = mappers.jsonReader().readValue(snapshotFile.toFile());
+      if (snapshot.path("version").asInt() != FORMAT_VERSION) {
+        log.info("Ignoring index snapshot " + snapshotFile + " written in an older format");
+        return Collections.emptyMap();
+      }
+      Map<String, Entry> entries = new HashMap<>();
+      for (JsonNode object : snapshot.path("objects")) {
+        ArkId arkId = object.hasNonNull("version")
+            ? new ArkId(object.get("naan").asText(), object.get("name").asText(),
+            object.get("version").asText())
+            : new ArkId(object.get("naan").asText(), object.get("name").asText());
+        entries.put(object.get("folder").asText(),
+            new Entry(arkId, object.get("modified").asLong()));
+      }
+      return entries;
+    } catch (Exception e) {
+      log.warn("Cannot read index snapshot " + snapshotFile + ", rebuilding from the shelf " + e);
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Replaces the snapshot with the contents of the index
+   *
+   * @param index index to persist
+   */
+  void write(KnowledgeObjectIndex index) {
+    ObjectNode snapshot = mappers.nodeFactory().objectNode();
+    snapshot.put("version", FORMAT_VERSION);
+    ArrayNode objects = snapshot.putArray("objects");
+    index.forEachLocation((arkId, folder) -> {
+      ObjectNode object = objects.addObject();
+      object.put("folder", folder);
+      object.put("naan", arkId.getNaan());
+      object.put("name", arkId.getName());
+      if (arkId.hasVersion()) {
+        object.put("version", arkId.getVersion());
+      }
+      object.put("modified", index.getModified(folder));
+    });
+    try {
+      Path tempFile = Files.createTempFile(shelf, SNAPSHOT_FILENAME, ".tmp");
+      mappers.jsonWriter().writeValue(tempFile.toFile(), snapshot);
+      Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.warn("Cannot write index snapshot " + snapshotFile + " " + e);
+    }
+  }
+
+  static final class Entry {
+
+    final ArkId arkId;
+    final long modified;
+
+    Entry(ArkId arkId, long modified) {
+      this.arkId = arkId;
+      this.modified = modified;
+    }
+  }
+}
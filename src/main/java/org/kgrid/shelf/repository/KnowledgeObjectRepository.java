@@ -1,57 +1,171 @@
 package org.kgrid.shelf.repository;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.kgrid.shelf.ShelfException;
 import org.kgrid.shelf.ShelfResourceNotFound;
 import org.kgrid.shelf.domain.ArkId;
 import org.kgrid.shelf.domain.KnowledgeObject;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ResourceUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 @Service
-public class KnowledgeObjectRepository {
+public class KnowledgeObjectRepository implements FileListener, DisposableBean {
+
+  static final int DEFAULT_SPECIFICATION_CACHE_SIZE = 1000;
 
   private final org.slf4j.Logger log = LoggerFactory.getLogger(KnowledgeObjectRepository.class);
   private CompoundDigitalObjectStore dataStore;
   private ZipImportService zipImportService;
   private ZipExportService zipExportService;
-  // Map of Ark -> Version -> File Location for rapid object lookup
-  private final static Map<String, Map<String, String>> objectLocations = new HashMap<>();
-  // Map of Ark -> Metadata location for displaying to end user
-  private final static Map<ArkId, JsonNode> knowledgeObjects = new HashMap<>();
+  private final ShelfMappers mappers;
+  // Number of KO folders read at the same time when the whole shelf is indexed
+  private final int indexThreads;
+  // Only set for filesystem shelves with kgrid.shelf.index.snapshot enabled
+  private final KnowledgeObjectIndexSnapshot snapshot;
+  // Replaced as a whole on a full rebuild so readers never see a half built index
+  private volatile KnowledgeObjectIndex index = newIndex();
+  // Parsed and rendered service/deployment specifications, dropped whenever their folder changes
+  private final SpecificationCache specifications;
+  private final Timer indexRebuilds;
+  private final DistributionSummary importSizes;
+  private final DistributionSummary exportSizes;
 
-  @Autowired
   KnowledgeObjectRepository(CompoundDigitalObjectStore compoundDigitalObjectStore,
       ZipImportService zis,
       ZipExportService zes) {
-    this.dataStore = compoundDigitalObjectStore;
+    this(compoundDigitalObjectStore, zis, zes, ShelfMappers.getDefault(), 1, false);
+  }
+
+  KnowledgeObjectRepository(CompoundDigitalObjectStore compoundDigitalObjectStore,
+      ZipImportService zis,
+      ZipExportService zes,
+      ShelfMappers mappers,
+      int indexThreads,
+      boolean indexSnapshot) {
+    this(compoundDigitalObjectStore, zis, zes, mappers, indexThreads, indexSnapshot,
+        Optional.empty());
+  }
+
+  @Autowired
+  KnowledgeObjectRepository(CompoundDigitalObjectStore compoundDigitalObjectStore,
+      ZipImportService zis,
+      ZipExportService zes,
+      ShelfMappers mappers,
+      @Value("${kgrid.shelf.index.threads:1}") int indexThreads,
+      @Value("${kgrid.shelf.index.snapshot:false}") boolean indexSnapshot,
+      Optional<MeterRegistry> meterRegistry) {
+    // Every store call the shelf makes, imports and exports included, is timed when metrics are on
+    this.dataStore = meterRegistry
+        .<CompoundDigitalObjectStore>map(registry ->
+            new MeteredCDOStore(compoundDigitalObjectStore, registry))
+        .orElse(compoundDigitalObjectStore);
+    MeterRegistry registry = meterRegistry.orElseGet(CompositeMeterRegistry::new);
+    this.indexRebuilds = Timer.builder("shelf.index.rebuilds")
+        .description("Full rebuilds of the shelf index")
+        .register(registry);
+    this.importSizes = DistributionSummary.builder("shelf.import.size")
+        .description("Size of the KO zips imported")
+        .baseUnit("bytes")
+        .register(registry);
+    this.exportSizes = DistributionSummary.builder("shelf.export.size")
+        .description("Size of the KO zips exported")
+        .baseUnit("bytes")
+        .register(registry);
+    Gauge.builder("shelf.kos", this, KnowledgeObjectRepository::count)
+        .description("Knowledge objects in the shelf index")
+        .register(registry);
     this.zipImportService = zis;
     this.zipExportService = zes;
-    // Initialize the map of folder names -> ark ids
+    this.mappers = mappers;
+    this.indexThreads = Math.max(1, indexThreads);
+    this.specifications = new SpecificationCache(DEFAULT_SPECIFICATION_CACHE_SIZE, mappers);
+    if (indexSnapshot && compoundDigitalObjectStore instanceof FilesystemCDOStore) {
+      this.snapshot = new KnowledgeObjectIndexSnapshot(
+          Paths.get(compoundDigitalObjectStore.getAbsoluteLocation("")), mappers);
+    } else {
+      if (indexSnapshot) {
+        log.warn("Index snapshots are only supported on filesystem shelves, ignoring");
+      }
+      this.snapshot = null;
+    }
+    // Initialize the map of folder names -> ark ids, kept current by targeted updates afterwards
     refreshObjectMap();
   }
 
+  /**
+   * Keep the index in step with changes made directly on a filesystem shelf, when a watcher has
+   * been configured for the shelf directory
+   *
+   * @param watcher watcher registered on the shelf root
+   */
+  @Autowired(required = false)
+  void setFilesystemCDOWatcher(FilesystemCDOWatcher watcher) {
+    watcher.addFileListener(this);
+  }
+
+  /**
+   * Limits the number of specifications kept in memory, 0 turns the specification cache off
+   *
+   * @param maxEntries most specifications to cache
+   */
+  @Autowired
+  void setSpecificationCacheSize(
+      @Value("${kgrid.shelf.cache.specifications:" + DEFAULT_SPECIFICATION_CACHE_SIZE + "}")
+          int maxEntries) {
+    specifications.setMaxEntries(maxEntries);
+  }
+
+  /**
+   * Saves the index for the next startup when snapshots are enabled
+   */
+  @Override
+  public void destroy() {
+    if (snapshot != null) {
+      snapshot.write(index);
+    }
+  }
+
   public void delete(ArkId arkId) {
 
-    dataStore.delete(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()));
+    String location = resolveLocation(arkId);
+    dataStore.delete(location);
+    removeFromIndex(arkId, location);
     log.info("Deleted ko with ark id " + arkId);
   }
 
@@ -63,18 +177,19 @@ public class KnowledgeObjectRepository {
    * @return metadata
    */
   public ObjectNode editMetadata(ArkId arkId, String path, String metadata) {
+    String koLocation = resolveLocation(arkId);
     Path metadataPath;
     if (path != null && !"".equals(path)) {
-      metadataPath = Paths.get(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()), path,
-          KnowledgeObject.METADATA_FILENAME);
+      metadataPath = Paths.get(koLocation, path, KnowledgeObject.METADATA_FILENAME);
     } else {
-      metadataPath = Paths
-          .get(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()), KnowledgeObject.METADATA_FILENAME);
+      metadataPath = Paths.get(koLocation, KnowledgeObject.METADATA_FILENAME);
     }
     try {
-      JsonNode jsonMetadata = new ObjectMapper().readTree(metadata);
+      JsonNode jsonMetadata = mappers.jsonReader().readValue(metadata);
 
       dataStore.saveMetadata(jsonMetadata, metadataPath.toString());
+      // The edit may have changed the id or version, so drop the old entry before re-reading it
+      reindexFolder(koLocation);
 
     } catch (IOException e) {
       log.error("Cannot edit metadata at " + metadataPath + " " + e);
@@ -91,64 +206,235 @@ public class KnowledgeObjectRepository {
    */
   public void extractZip(ArkId arkId, OutputStream outputStream) throws IOException {
 
-    String koPath = objectLocations.get(arkId.getDashArk()).get(arkId.getVersion());
-    outputStream
-        .write(zipExportService.exportObject(arkId, koPath, dataStore).toByteArray());
+    String koPath = resolveLocation(arkId);
+    CountingOutputStream counted = new CountingOutputStream(outputStream);
+    zipExportService.exportObject(arkId, koPath, dataStore, counted);
+    exportSizes.record(counted.getByteCount());
+  }
+
+  private synchronized void refreshObjectMap() {
+    indexRebuilds.record(this::rebuildIndex);
   }
 
-  private void refreshObjectMap() {
-    objectLocations.clear();
-    knowledgeObjects.clear();
+  private void rebuildIndex() {
+    long start = System.currentTimeMillis();
+    KnowledgeObjectIndex freshIndex = newIndex();
+    // Through the listing path so stores can answer it with a single query
+    List<String> folders = dataStore.getChildren(1, "");
+    Map<String, KnowledgeObjectIndexSnapshot.Entry> snapshotEntries =
+        snapshot == null ? Collections.emptyMap() : snapshot.read();
+    AtomicInteger reused = new AtomicInteger();
 
     //Load KO objects and skip any KOs with exceptions like missing metadata
-    for (String path : dataStore.getChildren("")) {
-      try {
-        ArkId arkId;
-        String folderName;
-
-        if(path.contains(File.separator)) {
-          folderName = StringUtils.substringAfterLast(path, File.separator);
-        } else {
-          folderName = path;
-        }
-
-        JsonNode metadata = dataStore.getMetadata(folderName);
-        if(!metadata.has("@id")) {
-          log.warn("Folder with metadata " + folderName + " is missing an @id field, cannot load.");
-          continue;
-        }
-
-        if(!metadata.has("version")) {
-          log.warn("Folder with metadata " + folderName + " is missing a version field, will default to reverse alphabetical lookup");
-          arkId = new ArkId(metadata.get("@id").asText());
-        } else {
-          arkId = new ArkId(metadata.get("@id").asText() + "/" + metadata.get("version").asText());
-        }
-
-        if(objectLocations.get(arkId.getDashArk()) != null && objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()) != null) {
-          log.warn("Two objects on the shelf have the same ark id: " +
-                  arkId + " Check folders " + folderName + " and " + objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()));
-        }
-
-        if(objectLocations.get(arkId.getDashArk()) == null){
-          Map<String, String> versionMap = new TreeMap<>(Collections.reverseOrder());
-          versionMap.put(arkId.getVersion(), folderName);
-          objectLocations.put(arkId.getDashArk(), versionMap);
-        } else {
-          objectLocations.get(arkId.getDashArk()).put(arkId.getVersion(), folderName);
-        }
-
-        knowledgeObjects.put(arkId, metadata);
-
-      } catch (Exception illegalArgument) {
-        log.warn("Unable to load KO " + illegalArgument.getMessage());
+    if (indexThreads > 1 && folders.size() > 1) {
+      indexFoldersInParallel(freshIndex, folders, snapshotEntries, reused);
+    } else {
+      for (String path : folders) {
+        loadFolder(freshIndex, path, snapshotEntries, reused);
+      }
+    }
+    index = freshIndex;
+    specifications.invalidateAll();
+    if (snapshot != null
+        && (reused.get() != freshIndex.size()
+        || reused.get() != snapshotEntries.size())) {
+      snapshot.write(freshIndex);
+    }
+    log.info("Indexed " + freshIndex.size() + " kos from " + folders.size()
+        + " folders (" + reused.get() + " unchanged since the last snapshot) in "
+        + (System.currentTimeMillis() - start) + " ms using " + indexThreads + " thread(s)");
+  }
+
+  private KnowledgeObjectIndex newIndex() {
+    return new KnowledgeObjectIndex(location -> dataStore.getMetadata(location));
+  }
+
+  private void indexFoldersInParallel(KnowledgeObjectIndex target, List<String> folders,
+      Map<String, KnowledgeObjectIndexSnapshot.Entry> snapshotEntries, AtomicInteger reused) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(indexThreads, folders.size()));
+    try {
+      List<Future<?>> loads = new ArrayList<>(folders.size());
+      for (String path : folders) {
+        loads.add(executor.submit(() -> loadFolder(target, path, snapshotEntries, reused)));
+      }
+      for (Future<?> load : loads) {
+        load.get();
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ShelfException("Interrupted while indexing the shelf", e);
+    } catch (ExecutionException e) {
+      throw new ShelfException("Cannot index the shelf", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Adds a KO folder to the index, reusing the snapshot entry when the metadata is unchanged
+   */
+  private void loadFolder(KnowledgeObjectIndex target, String path,
+      Map<String, KnowledgeObjectIndexSnapshot.Entry> snapshotEntries, AtomicInteger reused) {
+    String folderName = folderName(path);
+    KnowledgeObjectIndexSnapshot.Entry entry = snapshotEntries.get(folderName);
+    if (entry != null && entry.modified == snapshot.lastModified(folderName)) {
+      target.putUnloaded(entry.arkId, folderName, entry.modified);
+      reused.incrementAndGet();
+    } else {
+      indexFolder(target, path);
+    }
+  }
+
+  private String folderName(String path) {
+    if(path.contains(File.separator)) {
+      return StringUtils.substringAfterLast(path, File.separator);
+    }
+    return path;
+  }
+
+  /**
+   * Reads the metadata in a single KO folder and adds it to the index
+   *
+   * @param target index to add the KO to
+   * @param path location of the KO folder, either absolute or relative to the shelf
+   * @return ark id the folder was indexed under, or null if it could not be loaded
+   */
+  private ArkId indexFolder(KnowledgeObjectIndex target, String path) {
+    try {
+      ArkId arkId;
+      String folderName = folderName(path);
+      // Taken before reading so a later edit is never masked by an older timestamp
+      long lastModified = snapshot == null ? -1 : snapshot.lastModified(folderName);
+
+      JsonNode metadata = dataStore.getMetadata(folderName);
+      if(!metadata.has("@id")) {
+        log.warn("Folder with metadata " + folderName + " is missing an @id field, cannot load.");
+        return null;
+      }
+
+      if(!metadata.has("version")) {
+        log.warn("Folder with metadata " + folderName + " is missing a version field, will default to reverse alphabetical lookup");
+        arkId = ArkId.create(metadata.get("@id").asText());
+      } else {
+        arkId = ArkId.create(metadata.get("@id").asText() + "/" + metadata.get("version").asText());
+      }
+
+      String existing = target.put(arkId, folderName, metadata, lastModified);
+      if(existing != null && !existing.equals(folderName)) {
+        log.warn("Two objects on the shelf have the same ark id: " +
+                arkId + " Check folders " + folderName + " and " + existing);
+      }
+      return arkId;
+
+    } catch (Exception illegalArgument) {
+      log.warn("Unable to load KO " + illegalArgument.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Drops whatever the folder was previously indexed as and reads it again from the store
+   *
+   * @param folderName KO folder relative to the shelf
+   */
+  private synchronized void reindexFolder(String folderName) {
+    KnowledgeObjectIndex current = index;
+    current.removeLocation(folderName);
+    specifications.invalidate(folderName);
+    indexFolder(current, folderName);
+  }
+
+  private synchronized void removeFromIndex(ArkId arkId, String location) {
+    index.remove(arkId);
+    specifications.invalidate(location);
+  }
+
+  private synchronized void removeFolderFromIndex(String folderName) {
+    index.removeLocation(folderName);
+    specifications.invalidate(folderName);
+  }
+
+  /**
+   * Find the folder holding a specific version of a KO
+   *
+   * @param arkId version ark id
+   * @return location of the KO relative to the shelf
+   */
+  private String resolveLocation(ArkId arkId) {
+    String location = index.getLocation(arkId);
+    if (location == null) {
+      throw new ShelfResourceNotFound(arkId.getDashArkVersion() + " not found on shelf");
+    }
+    return location;
+  }
+
+  /**
+   * Find the folder specifications are read from, the newest version when no version is given
+   *
+   * @param arkId ark id, with or without a version
+   * @return location of the KO relative to the shelf
+   */
+  private String specificationLocation(ArkId arkId) {
+    if (arkId.hasVersion()) {
+      return resolveLocation(arkId);
+    }
+    Map<String, String> versions = index.getVersions(arkId.getDashArk());
+    if (versions == null || versions.isEmpty()) {
+      throw new ShelfResourceNotFound(arkId.getDashArk() + " not found on shelf");
+    }
+    return versions.values().iterator().next();
+  }
+
+  /**
+   * Updates the index for the KO folder touched by a change on a filesystem shelf
+   *
+   * @param path changed file or directory
+   * @param eventKind type of change
+   */
+  @Override
+  public void onEvent(Path path, WatchEvent.Kind eventKind) {
+    Path shelf = Paths.get(dataStore.getAbsoluteLocation(""));
+    if (!path.startsWith(shelf) || path.equals(shelf)) {
+      return;
+    }
+    String folderName = shelf.relativize(path).getName(0).toString();
+    if (folderName.startsWith("trx-")) {
+      // Transactions in progress are indexed when they are committed into the shelf
+      return;
+    }
+    if (Files.isDirectory(shelf.resolve(folderName))) {
+      reindexFolder(folderName);
+    } else {
+      removeFolderFromIndex(folderName);
     }
   }
 
   public Map<ArkId, JsonNode> findAll() {
-    refreshObjectMap();
-    return knowledgeObjects;
+    return index.getKnowledgeObjects();
+  }
+
+  /**
+   * @return number of objects on the shelf, read from the index without scanning it
+   */
+  public int count() {
+    return index.size();
+  }
+
+  /**
+   * @return true if the store holding the shelf can be reached
+   */
+  public boolean isStoreAvailable() {
+    return dataStore.isAvailable();
+  }
+
+  /**
+   * Objects from the index in ark id order, for reading the shelf a page at a time
+   *
+   * @param after ark id of the last object already read, or null to start at the first object
+   * @return read only view of the objects after the given one
+   */
+  public NavigableMap<ArkId, JsonNode> findAllAfter(ArkId after) {
+    return index.getKnowledgeObjectsAfter(after);
   }
 
   /**
@@ -186,14 +472,15 @@ public class KnowledgeObjectRepository {
       String deploymentSpecPath = versionNode.findValue(
           KnowledgeObject.DEPLOYMENT_SPEC_TERM).asText();
 
+    String location = specificationLocation(arkId);
     String uriPath = ResourceUtils.isUrl(deploymentSpecPath) ?
-        deploymentSpecPath : Paths.get(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()), deploymentSpecPath).toString();
+        deploymentSpecPath : Paths.get(location, deploymentSpecPath).toString();
 
       if(uriPath.startsWith("$.")) {
         log.warn("Cannot load deployment spec starting with $ yet");
         return null;
       }
-      return loadSpecificationNode(arkId, uriPath);
+      return loadSpecification(arkId, location, uriPath).getNode();
 
     } else {
 
@@ -206,13 +493,17 @@ public class KnowledgeObjectRepository {
   public JsonNode findKnowledgeObjectMetadata(ArkId arkId) {
 
     if(!arkId.hasVersion()) {
-      ArrayNode node = new ObjectMapper().createArrayNode();
-      objectLocations.get(arkId.getDashArk()).forEach((version, location) -> {
+      ArrayNode node = mappers.nodeFactory().arrayNode();
+      Map<String, String> versions = index.getVersions(arkId.getDashArk());
+      if(versions == null) {
+        throw new ShelfResourceNotFound("Cannot load metadata, " + arkId.getDashArk() + " not found on shelf");
+      }
+      versions.forEach((version, location) -> {
         node.add(dataStore.getMetadata(location));
       });
       return node;
     }
-    String nodeLoc = objectLocations.get(arkId.getDashArk()).get(arkId.getVersion());
+    String nodeLoc = index.getLocation(arkId);
     if(nodeLoc == null) {
       throw new ShelfResourceNotFound("Cannot load metadata, " + arkId.getDashArkVersion() + " not found on shelf");
     }
@@ -222,8 +513,7 @@ public class KnowledgeObjectRepository {
 
   public byte[] findPayload(ArkId arkId, String versionPath) {
 
-    String payloadPath = Paths.get(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()),
-        versionPath).toString();
+    String payloadPath = Paths.get(resolveLocation(arkId), versionPath).toString();
 
     log.info("find payload for  " + payloadPath);
 
@@ -239,27 +529,7 @@ public class KnowledgeObjectRepository {
    * @return JsonNode service specification
    */
   public JsonNode findServiceSpecification(ArkId arkId, JsonNode versionNode) {
-
-    String serviceSpecPath = versionNode.findValue(
-        KnowledgeObject.SERVICE_SPEC_TERM).asText();
-
-    log.info("find service specification at " + serviceSpecPath);
-
-    if(ResourceUtils.isUrl(serviceSpecPath)) {
-      return loadSpecificationNode(arkId, serviceSpecPath);
-    }
-
-    String uriPath;
-    if(arkId.hasVersion()) {
-      uriPath = Paths.get(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()),
-          serviceSpecPath).toString();
-
-
-    } else {
-      uriPath = Paths.get(objectLocations.get(arkId.getDashArk()).values().toArray()[0].toString(),
-          serviceSpecPath).toString();
-    }
-    return loadSpecificationNode(arkId, uriPath);
+    return serviceSpecification(arkId, versionNode).getNode();
   }
 
   /**
@@ -269,6 +539,30 @@ public class KnowledgeObjectRepository {
    * @return JsonNode service specification
    */
   public JsonNode findServiceSpecification(ArkId arkId) {
+    return serviceSpecification(arkId).getNode();
+  }
+
+  /**
+   * Find the Service Specification for the version, already serialized as JSON
+   *
+   * @param arkId Ark ID for the version
+   * @return service specification as JSON
+   */
+  public byte[] findServiceSpecificationJson(ArkId arkId) {
+    return serviceSpecification(arkId).getJson();
+  }
+
+  /**
+   * Find the Service Specification for the version, already serialized as YAML
+   *
+   * @param arkId Ark ID for the version
+   * @return service specification as YAML
+   */
+  public String findServiceSpecificationYaml(ArkId arkId) {
+    return serviceSpecification(arkId).getYaml();
+  }
+
+  private SpecificationCache.Specification serviceSpecification(ArkId arkId) {
 
     log.info("find service specification for " + arkId.getDashArkVersion());
 
@@ -278,12 +572,25 @@ public class KnowledgeObjectRepository {
       log.warn("Finding deployment spec for array of objects, looking up first object with version " + node.get("version").asText());
     }
 
-    return findServiceSpecification(arkId, node);
+    return serviceSpecification(arkId, node);
+  }
+
+  private SpecificationCache.Specification serviceSpecification(ArkId arkId,
+      JsonNode versionNode) {
+
+    String serviceSpecPath = versionNode.findValue(
+        KnowledgeObject.SERVICE_SPEC_TERM).asText();
+
+    log.info("find service specification at " + serviceSpecPath);
+
+    String location = specificationLocation(arkId);
+    String uriPath = ResourceUtils.isUrl(serviceSpecPath) ?
+        serviceSpecPath : Paths.get(location, serviceSpecPath).toString();
+    return loadSpecification(arkId, location, uriPath);
   }
 
   public byte[] getBinaryOrMetadata(ArkId arkId, String childPath) {
-    String filepath = Paths.get(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()), childPath)
-        .toString();
+    String filepath = Paths.get(resolveLocation(arkId), childPath).toString();
     if (this.dataStore.isMetadata(filepath)) {
 
       return this.dataStore.getMetadata(filepath).toString().getBytes();
@@ -292,20 +599,36 @@ public class KnowledgeObjectRepository {
     return this.dataStore.getBinary(filepath);
   }
 
+  /**
+   * Find a file in a KO version without reading it into memory
+   *
+   * @param arkId version ark id
+   * @param childPath path of the file inside the KO version
+   * @return the file as a resource, metadata files are returned as their JSON
+   */
+  public Resource getBinaryOrMetadataResource(ArkId arkId, String childPath) {
+    String filepath = Paths.get(resolveLocation(arkId), childPath).toString();
+    if (this.dataStore.isMetadata(filepath)) {
+      return new ByteArrayResource(this.dataStore.getMetadata(filepath).toString().getBytes());
+    }
+    return this.dataStore.getBinaryResource(filepath);
+  }
+
   public String getConnection() {
 
     return this.dataStore.getAbsoluteLocation("");
   }
 
   public JsonNode getMetadataAtPath(ArkId arkId, String path) {
-    return dataStore.getMetadata(objectLocations.get(arkId.getDashArk()).get(arkId.getVersion()), path);
+    return dataStore.getMetadata(resolveLocation(arkId), path);
   }
 
   public ArkId importZip(MultipartFile zippedKO) {
     try {
 
       ArkId arkId = zipImportService.importKO(zippedKO.getInputStream(), dataStore);
-      refreshObjectMap();
+      importSizes.record(zippedKO.getSize());
+      reindexFolder(arkId.getDashArk() + "-" + arkId.getVersion());
       return arkId;
     } catch (IOException e) {
       log.warn("Cannot load zip file with filename " + zippedKO.getName());
@@ -315,24 +638,38 @@ public class KnowledgeObjectRepository {
 
   public ArkId importZip(InputStream zipStream) {
 
-    ArkId arkId = zipImportService.importKO(zipStream, dataStore);
-    if(objectLocations.get(arkId.getDashArk()) != null) {
-      objectLocations.get(arkId.getDashArk()).put(arkId.getVersion(), arkId.getDashArk() + "-" + arkId.getVersion());
-    } else {
-      Map<String, String> version = new HashMap<>();
-      version.put(arkId.getVersion(), arkId.getDashArk() + "-" + arkId.getVersion());
-      objectLocations.put(arkId.getDashArk(), version);
-    }
-    refreshObjectMap();
+    CountingInputStream counted = new CountingInputStream(zipStream);
+    ArkId arkId = zipImportService.importKO(counted, dataStore);
+    importSizes.record(counted.getByteCount());
+    reindexFolder(arkId.getDashArk() + "-" + arkId.getVersion());
     return arkId;
   }
 
   public String getObjectLocation(ArkId arkId) {
-    // Reload for activation use cases
-    if(objectLocations.get(arkId.getDashArk()) == null) {
-      refreshObjectMap();
+    String location = index.getLocation(arkId);
+    if (location == null && arkId.hasVersion()) {
+      // Activation may ask for a KO put on the shelf without an event, only its folder is read
+      reindexFolder(arkId.getDashArk() + "-" + arkId.getVersion());
+      location = index.getLocation(arkId);
     }
-    return objectLocations.get(arkId.getDashArk()).get(arkId.getVersion());
+    return location;
+  }
+
+  /**
+   * Returns the specification from the cache, loading it the first time it is asked for
+   *
+   * @param arkId version ark id
+   * @param location KO folder the specification is loaded for
+   * @param uriPath path to specification file
+   * @return cached specification
+   */
+  private SpecificationCache.Specification loadSpecification(ArkId arkId, String location,
+      String uriPath) {
+    return specifications.get(location, uriPath, () -> loadSpecificationNode(arkId, uriPath));
+  }
+
+  SpecificationCache getSpecificationCache() {
+    return specifications;
   }
 
   /**
@@ -345,8 +682,7 @@ public class KnowledgeObjectRepository {
   protected JsonNode loadSpecificationNode(ArkId arkId, String uriPath) {
     try {
 
-      YAMLMapper yamlMapper = new YAMLMapper();
-      JsonNode serviceSpecNode = yamlMapper.readTree(dataStore.getBinary(uriPath));
+      JsonNode serviceSpecNode = mappers.yamlReader().readValue(dataStore.getBinary(uriPath));
 
       return serviceSpecNode;
 
@@ -0,0 +1,120 @@
+package org.kgrid.shelf.repository;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Bounded, least recently used cache of parsed metadata files. An entry is only served while the
+ * file's modification time and size are unchanged, and callers always get their own copy so an
+ * edit to a returned node never leaks into the cache.
+ */
+final class MetadataCache {
+
+  private final int maxEntries;
+  private final CacheCounters counters = new CacheCounters();
+  private final Map<Path, Entry> entries;
+  // Bumped by every invalidation, under the entries lock, so a file parsed across one (a file
+  // replaced with one of the same size and modification time) is not put back
+  private long epoch;
+
+  MetadataCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+        if (size() > MetadataCache.this.maxEntries) {
+          counters.evict();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached metadata for the file, parsing it with the loader when it is not cached or
+   * has changed on disk
+   *
+   * @param file metadata file
+   * @param loader parses the file
+   * @return copy of the parsed metadata
+   * @throws Exception if the file can't be read or parsed
+   */
+  ObjectNode get(Path file, Callable<ObjectNode> loader) throws Exception {
+    if (maxEntries <= 0) {
+      return loader.call();
+    }
+    // Read before parsing, so a change made while parsing is picked up on the next call
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    long modified = attributes.lastModifiedTime().toMillis();
+    long size = attributes.size();
+
+    Entry entry;
+    long readAt;
+    synchronized (entries) {
+      entry = entries.get(file);
+      readAt = epoch;
+    }
+    if (entry != null && entry.modified == modified && entry.size == size) {
+      counters.hit();
+      return entry.metadata.deepCopy();
+    }
+    counters.miss();
+    ObjectNode metadata = loader.call();
+    synchronized (entries) {
+      if (epoch != readAt) {
+        return metadata;
+      }
+      entries.put(file, new Entry(modified, size, metadata));
+    }
+    counters.put();
+    return metadata.deepCopy();
+  }
+
+  void invalidate(Path file) {
+    synchronized (entries) {
+      epoch++;
+      entries.remove(file);
+    }
+  }
+
+  /**
+   * Drops every cached file inside a directory
+   *
+   * @param directory directory that was changed
+   */
+  void invalidateAll(Path directory) {
+    synchronized (entries) {
+      epoch++;
+      entries.keySet().removeIf(file -> file.startsWith(directory));
+    }
+  }
+
+  int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  CacheCounters getCounters() {
+    return counters;
+  }
+
+  private static final class Entry {
+
+    final long modified;
+    final long size;
+    final ObjectNode metadata;
+
+    Entry(long modified, long size, ObjectNode metadata) {
+      this.modified = modified;
+      this.size = size;
+      this.metadata = metadata;
+    }
+  }
+}
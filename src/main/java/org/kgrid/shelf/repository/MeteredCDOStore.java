@@ -0,0 +1,380 @@
+package org.kgrid.shelf.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.kgrid.shelf.ShelfException;
+import org.kgrid.shelf.ShelfResourceNotFound;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Times every call to a store as the shelf.cdostore.requests timer, tagged with the operation, the
+ * store type and the outcome (SUCCESS, NOT_FOUND or ERROR), and records the size of the binaries
+ * read and written in the shelf.cdostore.bytes summary. Binary resources are timed and counted
+ * again as readBinaryResource from opening their stream or channel until it is closed.
+ */
+public class MeteredCDOStore implements CompoundDigitalObjectStore {
+
+  static final String REQUESTS = "shelf.cdostore.requests";
+  static final String BYTES = "shelf.cdostore.bytes";
+
+  private final CompoundDigitalObjectStore delegate;
+  private final MeterRegistry registry;
+  private final String storeType;
+
+  public MeteredCDOStore(CompoundDigitalObjectStore delegate, MeterRegistry registry) {
+    this.delegate = delegate;
+    this.registry = registry;
+    if (delegate instanceof FedoraCDOStore) {
+      storeType = "fedora";
+    } else if (delegate instanceof FilesystemCDOStore) {
+      storeType = "filesystem";
+    } else {
+      storeType = delegate.getClass().getSimpleName();
+    }
+  }
+
+  public CompoundDigitalObjectStore getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public List<String> getChildren(String... relativeLocationParts) {
+    return time("getChildren", () -> delegate.getChildren(relativeLocationParts));
+  }
+
+  @Override
+  public List<String> getChildren(int maxDepth, String... relativeLocationParts) {
+    return time("getChildren", () -> delegate.getChildren(maxDepth, relativeLocationParts));
+  }
+
+  @Override
+  public boolean isMetadata(String... relativeLocationParts) {
+    return time("isMetadata", () -> delegate.isMetadata(relativeLocationParts));
+  }
+
+  @Override
+  public String getAbsoluteLocation(String... relativeLocationParts) {
+    return delegate.getAbsoluteLocation(relativeLocationParts);
+  }
+
+  @Override
+  public ObjectNode getMetadata(String... relativeLocationParts) {
+    return time("getMetadata", () -> delegate.getMetadata(relativeLocationParts));
+  }
+
+  @Override
+  public byte[] getBinary(String... relativeLocationParts) {
+    byte[] binary = time("getBinary", () -> delegate.getBinary(relativeLocationParts));
+    bytes("getBinary").record(binary.length);
+    return binary;
+  }
+
+  @Override
+  public Resource getBinaryResource(String... relativeLocationParts) {
+    Resource resource =
+        time("getBinaryResource", () -> delegate.getBinaryResource(relativeLocationParts));
+    return resource instanceof RangedResource
+        ? new MeteredRangedResource((RangedResource) resource)
+        : new MeteredResource(resource);
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return time("isAvailable", delegate::isAvailable);
+  }
+
+  @Override
+  public void createContainer(String... relativeLocationParts) {
+    run("createContainer", () -> delegate.createContainer(relativeLocationParts));
+  }
+
+  @Override
+  public void saveMetadata(JsonNode metadata, String... relativeLocationParts) {
+    run("saveMetadata", () -> delegate.saveMetadata(metadata, relativeLocationParts));
+  }
+
+  @Override
+  public void saveBinary(byte[] data, String... relativeLocationParts) {
+    run("saveBinary", () -> delegate.saveBinary(data, relativeLocationParts));
+    bytes("saveBinary").record(data.length);
+  }
+
+  @Override
+  public void saveBinary(InputStream data, String... relativeLocationParts) {
+    CountingInputStream counted = new CountingInputStream(data);
+    run("saveBinary", () -> delegate.saveBinary(counted, relativeLocationParts));
+    bytes("saveBinary").record(counted.getByteCount());
+  }
+
+  @Override
+  public void delete(String... relativeLocationParts) throws ShelfException {
+    run("delete", () -> delegate.delete(relativeLocationParts));
+  }
+
+  @Override
+  public String createTransaction() {
+    return time("createTransaction", delegate::createTransaction);
+  }
+
+  @Override
+  public void commitTransaction(String transactionID) {
+    run("commitTransaction", () -> delegate.commitTransaction(transactionID));
+  }
+
+  @Override
+  public void rollbackTransaction(String transactionID) {
+    run("rollbackTransaction", () -> delegate.rollbackTransaction(transactionID));
+  }
+
+  private void run(String operation, Runnable call) {
+    time(operation, () -> {
+      call.run();
+      return null;
+    });
+  }
+
+  private <T> T time(String operation, Supplier<T> call) {
+    long start = System.nanoTime();
+    String outcome = "SUCCESS";
+    try {
+      return call.get();
+    } catch (ShelfResourceNotFound e) {
+      outcome = "NOT_FOUND";
+      throw e;
+    } catch (RuntimeException | Error e) {
+      outcome = "ERROR";
+      throw e;
+    } finally {
+      record(operation, outcome, System.nanoTime() - start);
+    }
+  }
+
+  private void record(String operation, String outcome, long nanos) {
+    Timer.builder(REQUESTS)
+        .description("Calls to the shelf's digital object store")
+        .tag("operation", operation)
+        .tag("store", storeType)
+        .tag("outcome", outcome)
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private DistributionSummary bytes(String operation) {
+    return DistributionSummary.builder(BYTES)
+        .description("Size of the binaries read from and written to the store")
+        .baseUnit("bytes")
+        .tag("operation", operation)
+        .tag("store", storeType)
+        .register(registry);
+  }
+
+  /**
+   * One read of a binary resource, recorded once its stream or channel is closed
+   */
+  private class BinaryRead {
+
+    private final long start = System.nanoTime();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicBoolean recorded = new AtomicBoolean();
+    private volatile boolean failed;
+
+    void read(long n) {
+      bytesRead.addAndGet(n);
+    }
+
+    void failed() {
+      failed = true;
+    }
+
+    void done() {
+      if (recorded.compareAndSet(false, true)) {
+        record("readBinaryResource", failed ? "ERROR" : "SUCCESS", System.nanoTime() - start);
+        bytes("readBinaryResource").record(bytesRead.get());
+      }
+    }
+  }
+
+  /**
+   * Counts what is read through the store's resource, keeping file channels so downloads can
+   * still transfer files without copying them through the heap
+   */
+  private class MeteredResource extends AbstractResource {
+
+    private final Resource resource;
+
+    MeteredResource(Resource resource) {
+      this.resource = resource;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return count(resource::getInputStream);
+    }
+
+    InputStream count(IOSupplier<InputStream> opener) throws IOException {
+      BinaryRead read = new BinaryRead();
+      InputStream stream = open(read, opener);
+      return new ProxyInputStream(stream) {
+        @Override
+        protected void afterRead(int n) {
+          if (n > 0) {
+            read.read(n);
+          }
+        }
+
+        @Override
+        protected void handleIOException(IOException e) throws IOException {
+          read.failed();
+          throw e;
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            read.done();
+          }
+        }
+      };
+    }
+
+    @Override
+    public ReadableByteChannel readableChannel() throws IOException {
+      BinaryRead read = new BinaryRead();
+      ReadableByteChannel channel = open(read, resource::readableChannel);
+      if (channel instanceof FileChannel) {
+        return new CountingFileChannel((FileChannel) channel, read::read) {
+          @Override
+          protected void implCloseChannel() throws IOException {
+            try {
+              super.implCloseChannel();
+            } finally {
+              read.done();
+            }
+          }
+        };
+      }
+      return new ReadableByteChannel() {
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+          try {
+            int n = channel.read(dst);
+            if (n > 0) {
+              read.read(n);
+            }
+            return n;
+          } catch (IOException e) {
+            read.failed();
+            throw e;
+          }
+        }
+
+        @Override
+        public boolean isOpen() {
+          return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            channel.close();
+          } finally {
+            read.done();
+          }
+        }
+      };
+    }
+
+    private <T> T open(BinaryRead read, IOSupplier<T> opener) throws IOException {
+      try {
+        return opener.get();
+      } catch (IOException | RuntimeException e) {
+        read.failed();
+        read.done();
+        throw e;
+      }
+    }
+
+    @Override
+    public boolean exists() {
+      return resource.exists();
+    }
+
+    @Override
+    public boolean isReadable() {
+      return resource.isReadable();
+    }
+
+    @Override
+    public URL getURL() throws IOException {
+      return resource.getURL();
+    }
+
+    @Override
+    public URI getURI() throws IOException {
+      return resource.getURI();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return resource.contentLength();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+      return resource.lastModified();
+    }
+
+    @Override
+    public String getFilename() {
+      return resource.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+      return resource.getDescription();
+    }
+  }
+
+  /**
+   * Counts ranged reads the same way, still handing the range to the store
+   */
+  private class MeteredRangedResource extends MeteredResource implements RangedResource {
+
+    private final RangedResource resource;
+
+    MeteredRangedResource(RangedResource resource) {
+      super(resource);
+      this.resource = resource;
+    }
+
+    @Override
+    public InputStream getInputStream(long position, long count) throws IOException {
+      return count(() -> resource.getInputStream(position, count));
+    }
+  }
+
+  private interface IOSupplier<T> {
+
+    T get() throws IOException;
+  }
+}
@@ -0,0 +1,16 @@
+package org.kgrid.shelf.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.core.io.Resource;
+
+/**
+ * A resource that can be read from a position without fetching the bytes before it
+ */
+public interface RangedResource extends Resource {
+
+  /**
+   * Opens a stream of count bytes starting at position
+   */
+  InputStream getInputStream(long position, long count) throws IOException;
+}
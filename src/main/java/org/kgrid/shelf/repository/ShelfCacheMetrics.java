@@ -0,0 +1,91 @@
+package org.kgrid.shelf.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the shelf caches as the standard cache.gets, cache.puts, cache.evictions and cache.size
+ * meters, and the Fedora connection pool as the httpcomponents.httpclient.pool.* meters, visible at
+ * /actuator/metrics when the actuator is enabled.
+ */
+@Component
+public class ShelfCacheMetrics implements MeterBinder {
+
+  private final CompoundDigitalObjectStore cdoStore;
+  private final KnowledgeObjectRepository shelf;
+
+  public ShelfCacheMetrics(CompoundDigitalObjectStore cdoStore) {
+    this(cdoStore, null);
+  }
+
+  @Autowired
+  public ShelfCacheMetrics(CompoundDigitalObjectStore cdoStore, KnowledgeObjectRepository shelf) {
+    this.cdoStore = cdoStore;
+    this.shelf = shelf;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    if (cdoStore instanceof FilesystemCDOStore) {
+      MetadataCache metadataCache = ((FilesystemCDOStore) cdoStore).getMetadataCache();
+      new CountersBinder("shelf.metadata", metadataCache.getCounters(), metadataCache::size)
+          .bindTo(registry);
+    }
+    if (cdoStore instanceof FedoraCDOStore) {
+      new PoolingHttpClientConnectionManagerMetricsBinder(
+          ((FedoraCDOStore) cdoStore).getConnectionManager(), "shelf.fedora").bindTo(registry);
+    }
+    if (shelf != null) {
+      SpecificationCache specifications = shelf.getSpecificationCache();
+      new CountersBinder("shelf.specification", specifications.getCounters(),
+          specifications::size).bindTo(registry);
+    }
+  }
+
+  private static final class CountersBinder extends CacheMeterBinder {
+
+    private final CacheCounters counters;
+    private final LongSupplier size;
+
+    CountersBinder(String cacheName, CacheCounters counters, LongSupplier size) {
+      super(counters, cacheName, Tags.empty());
+      this.counters = counters;
+      this.size = size;
+    }
+
+    @Override
+    protected Long size() {
+      return size.getAsLong();
+    }
+
+    @Override
+    protected long hitCount() {
+      return counters.getHits();
+    }
+
+    @Override
+    protected Long missCount() {
+      return counters.getMisses();
+    }
+
+    @Override
+    protected Long evictionCount() {
+      return counters.getEvictions();
+    }
+
+    @Override
+    protected long putCount() {
+      return counters.getPuts();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package org.kgrid.shelf.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * Preconfigured JSON and YAML readers and writers shared by the repository layer. Building a new
+ * mapper per call throws away Jackson's serializer and deserializer caches, so every reader and
+ * writer here is created once. Readers and writers are immutable and safe to share between
+ * threads.
+ */
+@Component
+public class ShelfMappers {
+
+  private static final ShelfMappers DEFAULT = new ShelfMappers();
+
+  private final ObjectReader jsonReader;
+  private final ObjectWriter jsonWriter;
+  private final ObjectWriter prettyJsonWriter;
+  private final ObjectReader yamlReader;
+  private final ObjectWriter yamlWriter;
+
+  public ShelfMappers() {
+    ObjectMapper jsonMapper = new ObjectMapper();
+    jsonMapper.setSerializationInclusion(Include.NON_NULL);
+    YAMLMapper yamlMapper = new YAMLMapper();
+
+    this.jsonReader = jsonMapper.readerFor(JsonNode.class);
+    this.jsonWriter = jsonMapper.writer();
+    this.prettyJsonWriter = jsonMapper.writer().with(SerializationFeature.INDENT_OUTPUT);
+    this.yamlReader = yamlMapper.readerFor(JsonNode.class);
+    this.yamlWriter = yamlMapper.writer();
+  }
+
+  /**
+   * Instance used by stores and services that are created outside of a Spring context
+   *
+   * @return shared mappers
+   */
+  public static ShelfMappers getDefault() {
+    return DEFAULT;
+  }
+
+  public ObjectReader jsonReader() {
+    return jsonReader;
+  }
+
+  public ObjectWriter jsonWriter() {
+    return jsonWriter;
+  }
+
+  public ObjectWriter prettyJsonWriter() {
+    return prettyJsonWriter;
+  }
+
+  public ObjectReader yamlReader() {
+    return yamlReader;
+  }
+
+  public ObjectWriter yamlWriter() {
+    return yamlWriter;
+  }
+
+  public JsonNodeFactory nodeFactory() {
+    return JsonNodeFactory.instance;
+  }
+}
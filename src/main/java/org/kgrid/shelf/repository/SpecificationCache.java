@@ -0,0 +1,151 @@
+package org.kgrid.shelf.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.kgrid.shelf.ShelfException;
+
+/**
+ * Bounded, least recently used cache of service and deployment specifications. Each entry keeps
+ * the parsed specification together with its JSON and YAML renderings, so the specification
+ * endpoints can answer without parsing or serializing. Entries are grouped by the KO folder they
+ * were loaded for and dropped when that folder is re-imported, edited or deleted.
+ */
+final class SpecificationCache {
+
+  private volatile int maxEntries;
+  private final ShelfMappers mappers;
+  private final CacheCounters counters = new CacheCounters();
+  private final Map<String, Specification> entries;
+  // Bumped by every invalidation, under the entries lock, so a specification loaded across one
+  // is not put back after the invalidation dropped it
+  private long epoch;
+
+  SpecificationCache(int maxEntries, ShelfMappers mappers) {
+    this.maxEntries = maxEntries;
+    this.mappers = mappers;
+    this.entries = new LinkedHashMap<String, Specification>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Specification> eldest) {
+        if (size() > SpecificationCache.this.maxEntries) {
+          counters.evict();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+    if (maxEntries <= 0) {
+      synchronized (entries) {
+        entries.clear();
+      }
+    }
+  }
+
+  /**
+   * Returns the cached specification, loading and rendering it when it is not cached
+   *
+   * @param location KO folder the specification belongs to
+   * @param uriPath path or url of the specification file
+   * @param loader reads and parses the specification file
+   * @return the specification
+   */
+  Specification get(String location, String uriPath, Supplier<JsonNode> loader) {
+    String key = location + "|" + uriPath;
+    Specification specification;
+    long loadedAt;
+    synchronized (entries) {
+      specification = entries.get(key);
+      loadedAt = epoch;
+    }
+    if (specification != null) {
+      counters.hit();
+      return specification;
+    }
+    counters.miss();
+    specification = render(loader.get());
+    if (maxEntries > 0) {
+      synchronized (entries) {
+        if (epoch != loadedAt) {
+          return specification;
+        }
+        entries.put(key, specification);
+      }
+      counters.put();
+    }
+    return specification;
+  }
+
+  /**
+   * Drops every specification loaded for a KO folder
+   *
+   * @param location KO folder relative to the shelf
+   */
+  void invalidate(String location) {
+    String prefix = location + "|";
+    synchronized (entries) {
+      epoch++;
+      entries.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+  }
+
+  void invalidateAll() {
+    synchronized (entries) {
+      epoch++;
+      entries.clear();
+    }
+  }
+
+  int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  CacheCounters getCounters() {
+    return counters;
+  }
+
+  private Specification render(JsonNode node) {
+    try {
+      return new Specification(node, mappers.jsonWriter().writeValueAsBytes(node),
+          mappers.yamlWriter().writeValueAsString(node));
+    } catch (JsonProcessingException e) {
+      throw new ShelfException("Cannot render specification", e);
+    }
+  }
+
+  static final class Specification {
+
+    private final JsonNode node;
+    private final byte[] json;
+    // Kept as text, the endpoints have always sent YAML as text/plain
+    private final String yaml;
+
+    private Specification(JsonNode node, byte[] json, String yaml) {
+      this.node = node;
+      this.json = json;
+      this.yaml = yaml;
+    }
+
+    /**
+     * @return copy of the parsed specification, safe for the caller to change
+     */
+    JsonNode getNode() {
+      return node.deepCopy();
+    }
+
+    byte[] getJson() {
+      return json.clone();
+    }
+
+    String getYaml() {
+      return yaml;
+    }
+  }
+}
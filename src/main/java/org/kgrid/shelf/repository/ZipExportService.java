@@ -1,32 +1,51 @@
 package org.kgrid.shelf.repository;
 
-import static org.zeroturnaround.zip.ZipUtil.pack;
-
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import com.github.jsonldjava.utils.JsonUtils;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.kgrid.shelf.ShelfException;
 import org.kgrid.shelf.domain.ArkId;
 import org.kgrid.shelf.domain.KnowledgeObject;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ResourceUtils;
-import org.zeroturnaround.zip.ByteSource;
-import org.zeroturnaround.zip.ZipEntrySource;
+import org.springframework.util.StreamUtils;
 
 @Service
 public class ZipExportService  {
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   private final org.slf4j.Logger log = LoggerFactory.getLogger(ZipExportService.class);
+  private final ShelfMappers mappers;
+
+  public ZipExportService() {
+    this(ShelfMappers.getDefault());
+  }
+
+  @Autowired
+  public ZipExportService(ShelfMappers mappers) {
+    this.mappers = mappers;
+  }
 
   /**
    * @param arkId export object ark id
@@ -39,28 +58,59 @@ public class ZipExportService  {
       String koPath, CompoundDigitalObjectStore cdoStore) throws ShelfException {
 
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    List<ZipEntrySource> entries = new ArrayList();
+    try {
+      exportObject(arkId, koPath, cdoStore, outputStream);
+    } catch (IOException e) {
+      throw new ShelfException("Issue exporting " + arkId, e);
+    }
+    return outputStream;
+  }
+
+  /**
+   * Writes the KO as a zip, copying one binary at a time from the store so the export never holds
+   * the whole KO in memory. The output stream is left open.
+   *
+   * @param arkId export object ark id
+   * @param koPath path to the ko
+   * @param cdoStore digital object store
+   * @param outputStream where the zip is written
+   * @throws IOException if the zip can't be written
+   * @throws ShelfException export process exception
+   */
+  public void exportObject(ArkId arkId, String koPath, CompoundDigitalObjectStore cdoStore,
+      OutputStream outputStream) throws IOException, ShelfException {
 
     //Get KO and add to export zip entries
     ObjectNode koMetaData = cdoStore.getMetadata(koPath);
 
+    //Find every binary before writing, so a missing file fails the export before any bytes are sent
+    Map<String, Resource> entries = new LinkedHashMap<>();
+    extractVersion(arkId, koPath, koMetaData, cdoStore, entries);
 
-    //Add version binary files to export zip entries
-    extractVersion(arkId, koPath, koMetaData,cdoStore, entries);
-
+    byte[] metadata;
     try {
-      entries.add(new ByteSource(
-          FilenameUtils.normalize(
-              Paths.get(arkId.getDashArk()+"-"+koMetaData.get("version").asText() , KnowledgeObject.METADATA_FILENAME).toString(), true),
-          JsonUtils.toPrettyString(koMetaData).getBytes()));
+      metadata = JsonUtils.toPrettyString(koMetaData).getBytes();
     } catch (IOException e) {
       throw new ShelfException("Issue extracting KO metadata for " + arkId, e);
     }
+    String metadataFileName = FilenameUtils.normalize(
+        Paths.get(arkId.getDashArk() + "-" + koMetaData.get("version").asText(),
+            KnowledgeObject.METADATA_FILENAME).toString(), true);
+    entries.put(metadataFileName, new ByteArrayResource(metadata));
 
     //Package it all up
-    pack(entries.toArray(new ZipEntrySource[entries.size()]), outputStream);
-
-    return outputStream;
+    ZipOutputStream zip = new ZipOutputStream(
+        new BufferedOutputStream(new CloseShieldOutputStream(outputStream), BUFFER_SIZE));
+    for (Map.Entry<String, Resource> entry : entries.entrySet()) {
+      zip.putNextEntry(new ZipEntry(entry.getKey()));
+      try (InputStream binary = entry.getValue().getInputStream()) {
+        StreamUtils.copy(binary, zip);
+      }
+      zip.closeEntry();
+    }
+    // Closing writes the central directory and flushes the buffer, the shield keeps the caller's
+    // stream open
+    zip.close();
   }
 
   /**
@@ -68,13 +118,13 @@ public class ZipExportService  {
    *
    * @param arkId Ark ID
    * @param cdoStore CDO Store
-   * @param entries List of all of the zip entries
+   * @param entries zip entry name -> binary, for all of the zip entries
    * @param koNode
    * @param koPath
    */
   private void extractVersion(ArkId arkId, String koPath, JsonNode koNode,
       CompoundDigitalObjectStore cdoStore,
-      List<ZipEntrySource> entries) {
+      Map<String, Resource> entries) {
 
       //Add version binary files to export zip entries
       List<String> binaryNodes =
@@ -89,7 +139,7 @@ public class ZipExportService  {
                 ResourceUtils.toURI(binaryPath).getPath().indexOf(arkId.getDashArk()))).toString() :
             Paths.get(koPath, binaryPath).toString();
 
-          byte[] bytes = cdoStore.getBinary(uriPath);
+          Resource binary = cdoStore.getBinaryResource(uriPath);
 
           //handle absolute and relative IRIs for binary filesdoc
           String binaryFileName = ResourceUtils.isUrl(binaryPath) ?
@@ -99,7 +149,7 @@ public class ZipExportService  {
                   FilenameUtils
                       .normalize(Paths.get(arkId.getDashArk()+"-"+koNode.get("version").asText(), binaryPath).toString(), true);
 
-          entries.add(new ByteSource(binaryFileName, bytes));
+          entries.put(binaryFileName, binary);
 
         } catch (URISyntaxException ex) {
           throw new ShelfException(
@@ -134,11 +184,10 @@ public class ZipExportService  {
     }
 
     if (versionNode.has(KnowledgeObject.SERVICE_SPEC_TERM)) {
-      YAMLMapper yamlMapper = new YAMLMapper();
       try {
 
-        JsonNode serviceDescription = yamlMapper
-            .readTree(cdoStore.getBinary(koPath,
+        JsonNode serviceDescription = mappers.yamlReader()
+            .readValue(cdoStore.getBinary(koPath,
                 ResourceUtils.isUrl(versionNode
                 .findValue(KnowledgeObject.SERVICE_SPEC_TERM).asText())?
                     Paths.get(ResourceUtils.toURI(versionNode
@@ -152,8 +201,8 @@ public class ZipExportService  {
         serviceDescription.get("paths").fields().forEachRemaining(service -> {
           String artifact = null;
           try {
-            JsonNode deploymentSpecification = yamlMapper
-                .readTree(cdoStore.getBinary(koPath, versionNode
+            JsonNode deploymentSpecification = mappers.yamlReader()
+                .readValue(cdoStore.getBinary(koPath, versionNode
                     .findValue(KnowledgeObject.DEPLOYMENT_SPEC_TERM).asText()));
             artifact = deploymentSpecification.get("endpoints").get(service.getKey())
                 .get("artifact").asText();
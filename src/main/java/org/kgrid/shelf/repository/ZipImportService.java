@@ -1,7 +1,6 @@
 package org.kgrid.shelf.repository;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
@@ -10,20 +9,78 @@ import org.kgrid.shelf.ShelfException;
 import org.kgrid.shelf.domain.ArkId;
 import org.kgrid.shelf.domain.KnowledgeObject;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ObjectUtils;
 import org.zeroturnaround.zip.ZipUtil;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
-public class ZipImportService {
+public class ZipImportService implements DisposableBean {
+
+  static final long DEFAULT_MEMORY_BUDGET = 8 * 1024 * 1024;
+  static final int DEFAULT_UPLOAD_THREADS = 4;
 
   private final org.slf4j.Logger log = LoggerFactory.getLogger(ZipImportService.class);
+  private final ShelfMappers mappers;
+  // Shared by every import running at the same time
+  private final ImportMemoryBudget memoryBudget;
+  // Binaries written into import transactions at the same time, across all imports
+  private final int uploadThreads;
+  private final ThreadPoolExecutor uploadExecutor;
+
+  public ZipImportService() {
+    this(ShelfMappers.getDefault());
+  }
+
+  public ZipImportService(ShelfMappers mappers) {
+    this(mappers, DEFAULT_MEMORY_BUDGET);
+  }
+
+  public ZipImportService(ShelfMappers mappers, long memoryBudget) {
+    this(mappers, memoryBudget, DEFAULT_UPLOAD_THREADS);
+  }
+
+  /**
+   * @param mappers shared json and yaml mappers
+   * @param memoryBudget bytes of zip entries all imports together may hold in memory, larger
+   *     entries are staged in temporary files (0 stages every binary in a file)
+   * @param uploadThreads binaries saved to the store at the same time by all imports together
+   */
+  @Autowired
+  public ZipImportService(ShelfMappers mappers,
+      @Value("${kgrid.shelf.import.memoryBudget:" + DEFAULT_MEMORY_BUDGET + "}") long memoryBudget,
+      @Value("${kgrid.shelf.import.uploadThreads:" + DEFAULT_UPLOAD_THREADS + "}")
+          int uploadThreads) {
+    this.mappers = mappers;
+    this.memoryBudget = new ImportMemoryBudget(memoryBudget);
+    this.uploadThreads = Math.max(1, uploadThreads);
+    AtomicInteger threadCount = new AtomicInteger();
+    this.uploadExecutor = new ThreadPoolExecutor(this.uploadThreads, this.uploadThreads,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+          Thread thread = new Thread(task, "import-upload-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    // Idle upload threads exit, so a service that is never destroyed holds no threads
+    this.uploadExecutor.allowCoreThreadTimeOut(true);
+  }
 
   /**
    * Create KO object, must add Knowledge Object files, Knowledge Object properties and Knowledge
@@ -31,14 +88,21 @@ public class ZipImportService {
    *
    * @param zipFileStream zip in the form of a stream
    * @param cdoStore persistence layer
-   * @return arkId imported arkId
+   * @return arkId imported arkId, including the imported version
    */
   public ArkId importKO(InputStream zipFileStream, CompoundDigitalObjectStore cdoStore) {
 
     Map<String, JsonNode> containerResources = new HashMap<>();
-    Map<String, byte[]> binaryResources = new HashMap<>();
 
-    captureZipEntries(zipFileStream, containerResources, binaryResources);
+    try (ImportStaging staging = new ImportStaging(memoryBudget)) {
+      captureZipEntries(zipFileStream, containerResources, staging);
+      return importKO(containerResources, staging, cdoStore);
+    }
+  }
+
+  private ArkId importKO(Map<String, JsonNode> containerResources, ImportStaging staging,
+      CompoundDigitalObjectStore cdoStore) {
+
     if (containerResources.isEmpty()) {
       throw new ShelfException(
           "The imported zip is not a valid knowledge object, no valid metadata found");
@@ -51,8 +115,8 @@ public class ZipImportService {
         ArkId arkId = new ArkId(findKOMetadata(containerResources).get("identifier").asText());
         String version = findKOMetadata(containerResources).get("version").asText();
 
-        importObject(arkId, version, cdoStore, containerResources, binaryResources);
-        return arkId;
+        importStagedObject(arkId, version, cdoStore, containerResources, staging.getBinaries());
+        return new ArkId(arkId.getNaan(), arkId.getName(), version);
 
       } else {
         throw new ShelfException(
@@ -62,20 +126,20 @@ public class ZipImportService {
   }
 
   /**
-   * Captures the Zip Entries loading a collection of metadata and collection of binaries
+   * Captures the Zip Entries loading a collection of metadata and staging the binaries one at a
+   * time as they are read
    *
    * @param zipFileStream zip file in a stream
    * @param containerResources collection of metadata files
-   * @param binaryResources collection of binary files
+   * @param staging holds the binary files until they are imported
    */
   private void captureZipEntries(
       InputStream zipFileStream,
       Map<String, JsonNode> containerResources,
-      Map<String, byte[]> binaryResources) {
+      ImportStaging staging) {
 
     log.info("processing zipEntries");
-    Map<String, JsonNode> metadataQueue = Collections.synchronizedMap(new LinkedHashMap<>());
-    Map<String, byte[]> binaryQueue = Collections.synchronizedMap(new LinkedHashMap<>());
+    Map<String, JsonNode> metadataQueue = new LinkedHashMap<>();
 
     ZipUtil.iterate(
         zipFileStream,
@@ -87,7 +151,7 @@ public class ZipImportService {
               StringWriter writer = new StringWriter();
               IOUtils.copy(inputStream, writer, StandardCharsets.UTF_8);
 
-              JsonNode metadata = new ObjectMapper().readTree(writer.toString());
+              JsonNode metadata = mappers.jsonReader().readValue(writer.toString());
 
               try {
                 validateMetadata(zipEntry.getName(), metadata);
@@ -101,15 +165,12 @@ public class ZipImportService {
             } else if (!zipEntry.isDirectory()
                 && !zipEntry.getName().endsWith(KnowledgeObject.METADATA_FILENAME)) {
 
-              binaryQueue.put(zipEntry.getName(), IOUtils.toByteArray(inputStream));
+              staging.stage(FilenameUtils.normalize(zipEntry.getName()), inputStream);
             }
           }
         });
 
     metadataQueue.forEach((filename, metadata) -> containerResources.put(filename, metadata));
-
-    binaryQueue.forEach(
-        (filename, bytes) -> binaryResources.put(FilenameUtils.normalize(filename), bytes));
   }
 
   /**
@@ -153,6 +214,24 @@ public class ZipImportService {
       Map<String, JsonNode> containerResources,
       Map<String, byte[]> binaryResources) {
 
+    // Already in memory, so there is nothing to reserve
+    try (ImportStaging staging = new ImportStaging(new ImportMemoryBudget(Long.MAX_VALUE))) {
+      for (Map.Entry<String, byte[]> binary : binaryResources.entrySet()) {
+        staging.stage(binary.getKey(), new ByteArrayInputStream(binary.getValue()));
+      }
+      importStagedObject(arkId, version, cdoStore, containerResources, staging.getBinaries());
+    } catch (IOException e) {
+      throw new ShelfException("Could not import " + arkId, e);
+    }
+  }
+
+  private void importStagedObject(
+      ArkId arkId,
+      String version,
+      CompoundDigitalObjectStore cdoStore,
+      Map<String, JsonNode> containerResources,
+      Map<String, ImportStaging.StagedBinary> binaryResources) {
+
     log.info("loading zip file for " + arkId.getDashArk());
     String trxId = cdoStore.createTransaction();
 
@@ -166,14 +245,14 @@ public class ZipImportService {
 
       cdoStore.createContainer(trxId, arkId.getDashArk() + "-" + version);
 
-      binaryResources.forEach(
-          (binaryPath, bytes) -> {
-            cdoStore.saveBinary(
-                bytes,
-                trxId,
-                arkId.getDashArk() + "-" + version,
-                StringUtils.substringAfter(binaryPath, File.separator));
-          });
+      if (uploadThreads > 1 && binaryResources.size() > 1) {
+        saveBinariesInParallel(cdoStore, trxId, arkId.getDashArk() + "-" + version,
+            binaryResources);
+      } else {
+        for (Map.Entry<String, ImportStaging.StagedBinary> binary : binaryResources.entrySet()) {
+          saveBinary(cdoStore, trxId, arkId.getDashArk() + "-" + version, binary);
+        }
+      }
 
       cdoStore.saveMetadata(
           koMetaData, trxId, arkId.getDashArk() + "-" + version, KnowledgeObject.METADATA_FILENAME);
@@ -187,6 +266,107 @@ public class ZipImportService {
     }
   }
 
+  /**
+   * Saves the binaries into the transaction on the shared upload executor. Once the first upload
+   * fails the uploads still waiting are skipped and the running ones interrupted, and this only
+   * returns after every upload has stopped so the rollback never races a write into the
+   * transaction.
+   */
+  private void saveBinariesInParallel(CompoundDigitalObjectStore cdoStore, String trxId,
+      String koFolder, Map<String, ImportStaging.StagedBinary> binaryResources) {
+    CountDownLatch stopped = new CountDownLatch(binaryResources.size());
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Set<Thread> writers = new HashSet<>();
+    for (Map.Entry<String, ImportStaging.StagedBinary> binary : binaryResources.entrySet()) {
+      try {
+        uploadExecutor.execute(() -> {
+          try {
+            if (failure.get() == null) {
+              synchronized (writers) {
+                writers.add(Thread.currentThread());
+              }
+              try {
+                saveBinary(cdoStore, trxId, koFolder, binary);
+              } finally {
+                synchronized (writers) {
+                  writers.remove(Thread.currentThread());
+                  // Clear an interrupt meant for this upload before the thread is reused
+                  Thread.interrupted();
+                }
+              }
+            }
+          } catch (Exception e) {
+            fail(failure, e, writers);
+          } finally {
+            stopped.countDown();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        fail(failure, e, writers);
+        stopped.countDown();
+      }
+    }
+    awaitUploads(stopped, failure, writers, koFolder);
+    if (failure.get() != null) {
+      throw new ShelfException("Cannot save binaries of " + koFolder, failure.get());
+    }
+  }
+
+  private void fail(AtomicReference<Throwable> failure, Throwable cause, Set<Thread> writers) {
+    if (failure.compareAndSet(null, cause)) {
+      synchronized (writers) {
+        writers.forEach(Thread::interrupt);
+      }
+    }
+  }
+
+  /**
+   * Waits until every upload has stopped, even when the importing thread is interrupted, which
+   * instead cancels the uploads and is passed on once they have stopped.
+   */
+  private void awaitUploads(CountDownLatch stopped, AtomicReference<Throwable> failure,
+      Set<Thread> writers, String koFolder) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          if (stopped.await(1, TimeUnit.MINUTES)) {
+            return;
+          }
+          log.warn("Still waiting for " + stopped.getCount() + " uploads of " + koFolder
+              + " to stop");
+        } catch (InterruptedException e) {
+          interrupted = true;
+          fail(failure, e, writers);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void saveBinary(CompoundDigitalObjectStore cdoStore, String trxId, String koFolder,
+      Map.Entry<String, ImportStaging.StagedBinary> binary) throws IOException {
+    try (InputStream data = binary.getValue().open()) {
+      cdoStore.saveBinary(
+          data,
+          trxId,
+          koFolder,
+          StringUtils.substringAfter(binary.getKey(), File.separator));
+    }
+  }
+
+  @Override
+  public void destroy() {
+    uploadExecutor.shutdownNow();
+  }
+
+  ImportMemoryBudget getMemoryBudget() {
+    return memoryBudget;
+  }
+
   /**
    * Validate the metadata
    *
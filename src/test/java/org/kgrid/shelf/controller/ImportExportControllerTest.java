@@ -7,18 +7,38 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.kgrid.shelf.ShelfResourceNotFound;
 import org.kgrid.shelf.domain.ArkId;
 import org.kgrid.shelf.repository.KnowledgeObjectRepository;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ApplicationAvailabilityBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -53,7 +73,7 @@ public class ImportExportControllerTest {
     when(mockApplicationContext.getResource(RESOURCE_1_URI)).thenReturn(mockResource);
     when(mockApplicationContext.getResource(RESOURCE_2_URI)).thenReturn(mockResource);
     when(mockMapper.readTree(mockResourceInputStream)).thenReturn(manifestNode);
-    when(mockKnowledgeObjectRepository.importZip(mockResourceInputStream)).thenReturn(validArkId);
+    when(mockKnowledgeObjectRepository.importZip(any(InputStream.class))).thenReturn(validArkId);
   }
 
   @Test
@@ -61,8 +81,46 @@ public class ImportExportControllerTest {
     String[] manifests = new String[] {GOOD_MANIFEST_PATH, BAD_MANIFEST_PATH, GOOD_MANIFEST_PATH};
     importExportController = getImportExportControllerForManifestList(manifests);
     importExportController.afterPropertiesSet();
+    importExportController.getStartupManifests().join();
 
     verify(mockKnowledgeObjectRepository, times(4)).importZip(any(InputStream.class));
+    assertEquals(4, importExportController.getStartupManifestStatus().get("kosImported"));
+  }
+
+  @Test
+  public void afterPropertiesSet_loadsManifestsInTheBackgroundUntilReady() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> importThreads = new CopyOnWriteArrayList<>();
+    when(mockKnowledgeObjectRepository.importZip((InputStream) any())).thenAnswer(invocation -> {
+      importThreads.add(Thread.currentThread().getName());
+      release.await(10, TimeUnit.SECONDS);
+      return validArkId;
+    });
+    importExportController =
+        getImportExportControllerForManifestList(new String[] {GOOD_MANIFEST_PATH});
+    StartupManifestsHealthIndicator progress =
+        new StartupManifestsHealthIndicator(importExportController);
+    GenericApplicationContext context = new GenericApplicationContext();
+    context.registerBean(ApplicationAvailabilityBean.class);
+    context.refresh();
+    ApplicationAvailability availability = context.getBean(ApplicationAvailability.class);
+
+    importExportController.afterPropertiesSet();
+    // The application is marked ready before the readiness is held back
+    AvailabilityChangeEvent.publish(context, ReadinessState.ACCEPTING_TRAFFIC);
+    StartupManifestsReadiness.holdUntilLoaded(context,
+        importExportController.getStartupManifests());
+
+    assertEquals(ReadinessState.REFUSING_TRAFFIC, availability.getReadinessState());
+    assertEquals(Status.UP, progress.health().getStatus());
+    assertEquals(false, progress.health().getDetails().get("loaded"));
+    release.countDown();
+    importExportController.getStartupManifests().get(10, TimeUnit.SECONDS);
+    assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+    Health health = progress.health();
+    assertEquals(1, health.getDetails().get("manifestsLoaded"));
+    assertEquals(2, health.getDetails().get("kosImported"));
+    assertTrue(importThreads.stream().allMatch(name -> name.startsWith("manifest-import-")));
   }
 
   @Test
@@ -72,11 +130,11 @@ public class ImportExportControllerTest {
     importExportController.afterPropertiesSet();
 
     verify(mockKnowledgeObjectRepository, never()).importZip((InputStream) any());
+    assertEquals(true, importExportController.getStartupManifestStatus().get("loaded"));
   }
 
-  @Test(expected = IllegalArgumentException.class)
-  public void afterPropertiesSet_malformedManifestThrowsIllegalArgumentException()
-      throws IOException {
+  @Test
+  public void afterPropertiesSet_malformedManifestIsReportedAsAnError() throws IOException {
 
     ObjectNode badManifest = JsonNodeFactory.instance.objectNode().put("shmanifest", "bad");
     when(mockMapper.readTree(mockResourceInputStream)).thenReturn(badManifest);
@@ -85,10 +143,16 @@ public class ImportExportControllerTest {
         getImportExportControllerForManifestList(new String[] {GOOD_MANIFEST_PATH});
 
     importExportController.afterPropertiesSet();
+    importExportController.getStartupManifests().join();
+
+    verify(mockKnowledgeObjectRepository, never()).importZip((InputStream) any());
+    assertEquals(Collections.singletonList(GOOD_MANIFEST_PATH
+            + ": Provide manifest field with url or array of urls as the value"),
+        importExportController.getStartupManifestStatus().get("errors"));
   }
 
   @Test
-  public void afterPropertiesSet_DoesNothingIfUnreadableManifestResourceIsLoaded()
+  public void afterPropertiesSet_unreadableManifestIsReportedAsAnError()
       throws IOException {
     when(mockMapper.readTree(mockResourceInputStream)).thenThrow(new IOException());
 
@@ -96,8 +160,13 @@ public class ImportExportControllerTest {
         getImportExportControllerForManifestList(new String[] {GOOD_MANIFEST_PATH});
 
     importExportController.afterPropertiesSet();
+    importExportController.getStartupManifests().join();
 
     verify(mockKnowledgeObjectRepository, never()).importZip((InputStream) any());
+    assertEquals(Collections.singletonList(GOOD_MANIFEST_PATH
+            + ": Cannot read manifest " + GOOD_MANIFEST_PATH),
+        importExportController.getStartupManifestStatus().get("errors"));
+    assertEquals(1, importExportController.getStartupManifestStatus().get("manifestsLoaded"));
   }
 
   @Test
@@ -105,13 +174,111 @@ public class ImportExportControllerTest {
     when(mockKnowledgeObjectRepository.importZip((InputStream) any()))
         .thenThrow(new RuntimeException())
         .thenReturn(validArkId);
-    importExportController = getImportExportControllerForManifestList(null);
+    importExportController =
+        getImportExportControllerForManifestList(new String[] {GOOD_MANIFEST_PATH});
 
-    Map<String, Object> loaded = importExportController.loadManifestIfSet(GOOD_MANIFEST_PATH);
+    importExportController.afterPropertiesSet();
+    importExportController.getStartupManifests().join();
 
     verify(mockKnowledgeObjectRepository, times(2)).importZip((InputStream) any());
 
-    assertEquals("should skip one and import one:", 1, ((ArrayNode) loaded.get("Added")).size());
+    Map<String, Object> status = importExportController.getStartupManifestStatus();
+    assertEquals("should skip one and import one:", 1, status.get("kosImported"));
+    assertEquals(1, status.get("kosFailed"));
+  }
+
+  @Test
+  public void manifestKosAreImportedConcurrentlyWithTheirStatus() {
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    when(mockKnowledgeObjectRepository.importZip((InputStream) any())).thenAnswer(invocation -> {
+      bothStarted.countDown();
+      if (!bothStarted.await(10, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("imports ran one after another");
+      }
+      return validArkId;
+    });
+    when(mockApplicationContext.getResource("MISSING_URI"))
+        .thenThrow(new IllegalArgumentException("no such ko"));
+    ObjectNode manifest = getManifestNode();
+    ((ArrayNode) manifest.get("manifest")).add("MISSING_URI").add(RESOURCE_1_URI);
+    importExportController = getImportExportControllerForManifestList(null);
+    importExportController.setManifestThreads(2);
+
+    Map<String, Object> response = importExportController.depositKnowledgeObject(manifest)
+        .getBody();
+
+    List<Map<String, Object>> items = (List<Map<String, Object>>) response.get("Items");
+    assertEquals(3, items.size());
+    assertEquals(RESOURCE_1_URI, items.get(0).get("location"));
+    assertEquals("imported", items.get(0).get("status"));
+    assertEquals("ark:/naan/name", items.get(1).get("ark"));
+    assertEquals("failed", items.get(2).get("status"));
+    assertEquals("no such ko", items.get(2).get("error"));
+    assertTrue(items.stream().allMatch(item -> item.get("millis") instanceof Long));
+    assertEquals(2, ((ArrayNode) response.get("Added")).size());
+  }
+
+  @Test
+  public void concurrentManifestsShareTheImportThreads() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger mostRunning = new AtomicInteger();
+    when(mockKnowledgeObjectRepository.importZip((InputStream) any())).thenAnswer(invocation -> {
+      mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Thread.sleep(100);
+      running.decrementAndGet();
+      return validArkId;
+    });
+    importExportController = getImportExportControllerForManifestList(null);
+    importExportController.setManifestThreads(2);
+
+    Thread other = new Thread(() -> importExportController.depositKnowledgeObject(getManifestNode()));
+    other.start();
+    importExportController.depositKnowledgeObject(getManifestNode());
+    other.join();
+
+    verify(mockKnowledgeObjectRepository, times(4)).importZip((InputStream) any());
+    assertTrue(mostRunning.get() <= 2);
+    importExportController.destroy();
+  }
+
+  @Test
+  public void asyncManifestImportIsFollowedThroughItsJob() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    when(mockKnowledgeObjectRepository.importZip((InputStream) any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return validArkId;
+    });
+    RequestContextHolder.setRequestAttributes(
+        new ServletRequestAttributes(new MockHttpServletRequest("POST", "/kos/manifest")));
+    importExportController = getImportExportControllerForManifestList(null);
+    try {
+      ResponseEntity<Map<String, Object>> started =
+          importExportController.startManifestImport(getManifestNode());
+
+      assertEquals(HttpStatus.ACCEPTED, started.getStatusCode());
+      String id = (String) started.getBody().get("id");
+      assertEquals("http://localhost/kos/manifest/jobs/" + id,
+          started.getHeaders().getLocation().toString());
+      assertEquals("running", importExportController.getManifestImport(id).get("status"));
+
+      release.countDown();
+      Map<String, Object> job = importExportController.getManifestImport(id);
+      for (int i = 0; i < 100 && "running".equals(job.get("status")); i++) {
+        Thread.sleep(50);
+        job = importExportController.getManifestImport(id);
+      }
+      assertEquals("finished", job.get("status"));
+      assertEquals(Collections.singletonMap("imported", 2), job.get("counts"));
+      assertTrue(job.containsKey("bytesPerSecond"));
+    } finally {
+      importExportController.destroy();
+      RequestContextHolder.resetRequestAttributes();
+    }
+  }
+
+  @Test(expected = ShelfResourceNotFound.class)
+  public void unknownManifestImportJobIsNotFound() {
+    getImportExportControllerForManifestList(null).getManifestImport("missing");
   }
 
   private ObjectNode getManifestNode() {
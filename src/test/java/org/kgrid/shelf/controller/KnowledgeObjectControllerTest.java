@@ -0,0 +1,308 @@
+package org.kgrid.shelf.controller;
+
+import static org.hamcrest.Matchers.contains;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.kgrid.shelf.domain.ArkId;
+import org.kgrid.shelf.repository.KnowledgeObjectRepository;
+import org.kgrid.shelf.repository.RangedResource;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KnowledgeObjectControllerTest {
+
+  private static final String PAYLOAD = "function welcome(inputs) { return 'Welcome' }";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private KnowledgeObjectRepository mockKnowledgeObjectRepository;
+  private MockMvc mockMvc;
+  private ArkId arkId = new ArkId("hello", "world", "v0.1.0");
+
+  @Before
+  public void setup() {
+    mockKnowledgeObjectRepository = Mockito.mock(KnowledgeObjectRepository.class);
+    mockMvc = MockMvcBuilders.standaloneSetup(
+        new KnowledgeObjectController(mockKnowledgeObjectRepository, Optional.empty())).build();
+  }
+
+  @Test
+  public void serviceDescriptionIsSentAsText() throws Exception {
+    when(mockKnowledgeObjectRepository.findServiceSpecificationYaml(arkId))
+        .thenReturn("openapi: 3.0.0\n");
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/service").header("Accept", "*/*"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+        .andExpect(content().string("openapi: 3.0.0\n"));
+    mockMvc.perform(get("/kos/hello/world/service").param("v", "v0.1.0"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN));
+  }
+
+  @Test
+  public void getBinaryStreamsFileFromShelf() throws Exception {
+    payloadFile();
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js"))
+        .andExpect(status().isOk())
+        .andExpect(header().longValue("Content-Length", PAYLOAD.length()))
+        .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+        .andExpect(content().string(PAYLOAD));
+  }
+
+  @Test
+  public void getBinaryStreamsResourcesWithoutAFile() throws Exception {
+    when(mockKnowledgeObjectRepository.getBinaryOrMetadataResource(arkId, "metadata.json"))
+        .thenReturn(new ByteArrayResource("{\"@id\":\"hello-world\"}".getBytes()));
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/metadata.json"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("{\"@id\":\"hello-world\"}"));
+  }
+
+  @Test
+  public void getBinarySendsValidators() throws Exception {
+    File payload = payloadFile();
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", etag(payload)))
+        .andExpect(header().dateValue("Last-Modified", payload.lastModified() / 1000 * 1000))
+        .andExpect(header().string("Accept-Ranges", "bytes"));
+  }
+
+  @Test
+  public void getBinaryAnswersNotModifiedForMatchingETag() throws Exception {
+    File payload = payloadFile();
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js")
+        .header("If-None-Match", etag(payload)))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+  }
+
+  @Test
+  public void getBinaryAnswersNotModifiedWhenUnchangedSinceDate() throws Exception {
+    File payload = payloadFile();
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js")
+        .header("If-Modified-Since", httpDate(payload.lastModified() + 1000)))
+        .andExpect(status().isNotModified());
+  }
+
+  @Test
+  public void getBinarySendsRequestedRange() throws Exception {
+    payloadFile();
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js").header("Range", "bytes=9-15"))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().string("Content-Range", "bytes 9-15/" + PAYLOAD.length()))
+        .andExpect(header().longValue("Content-Length", 7))
+        .andExpect(content().string("welcome"));
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js").header("Range", "bytes=-3"))
+        .andExpect(status().isPartialContent())
+        .andExpect(content().string("' }"));
+  }
+
+  @Test
+  public void getBinarySendsRangeOfResourcesWithoutAFile() throws Exception {
+    when(mockKnowledgeObjectRepository.getBinaryOrMetadataResource(arkId, "src/index.js"))
+        .thenReturn(new ByteArrayResource(PAYLOAD.getBytes()));
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js").header("Range", "bytes=9-15"))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().exists("ETag"))
+        .andExpect(content().string("welcome"));
+  }
+
+  @Test
+  public void getBinaryAsksTheStoreForJustTheRange() throws Exception {
+    when(mockKnowledgeObjectRepository.getBinaryOrMetadataResource(arkId, "src/index.js"))
+        .thenReturn(new RangedByteArrayResource(PAYLOAD.getBytes()));
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js").header("Range", "bytes=9-15"))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().string("Content-Range", "bytes 9-15/" + PAYLOAD.length()))
+        .andExpect(content().string("welcome"));
+  }
+
+  @Test
+  public void getBinaryRejectsRangePastTheEnd() throws Exception {
+    payloadFile();
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js").header("Range", "bytes=1000-"))
+        .andExpect(status().isRequestedRangeNotSatisfiable())
+        .andExpect(header().string("Content-Range", "bytes */" + PAYLOAD.length()));
+  }
+
+  @Test
+  public void getBinaryIgnoresRangeWhenIfRangeDoesNotMatch() throws Exception {
+    payloadFile();
+
+    mockMvc.perform(get("/kos/hello/world/v0.1.0/src/index.js")
+        .header("Range", "bytes=9-15")
+        .header("If-Range", "\"stale\""))
+        .andExpect(status().isOk())
+        .andExpect(content().string(PAYLOAD));
+  }
+
+  @Test
+  public void getAllObjectsListsWholeShelfByDefault() throws Exception {
+    shelfIndex();
+
+    mockMvc.perform(get("/kos"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("X-Total-Count", "3"))
+        .andExpect(header().doesNotExist("Link"))
+        .andExpect(jsonPath("$[*].@id").value(contains("hello-world", "hello-world", "moon-pie")));
+  }
+
+  @Test
+  public void getAllObjectsPagesWithACursor() throws Exception {
+    shelfIndex();
+
+    mockMvc.perform(get("/kos?limit=2&fields=@id,version"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("X-Total-Count", "3"))
+        .andExpect(header().string("Link",
+            "<http://localhost/kos?limit=2&fields=@id,version&cursor=hello-world/v0.2.0>; rel=\"next\""))
+        .andExpect(content().json("[{\"@id\":\"hello-world\",\"version\":\"v0.1.0\"},"
+            + "{\"@id\":\"hello-world\",\"version\":\"v0.2.0\"}]", true));
+
+    mockMvc.perform(get("/kos").param("limit", "2").param("cursor", "hello-world/v0.2.0"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist("Link"))
+        .andExpect(header().doesNotExist("X-Total-Count"))
+        .andExpect(jsonPath("$[*].@id").value(contains("moon-pie")));
+    mockMvc.perform(get("/kos").param("limit", "1").param("cursor", "hello-world/v0.1.0")
+        .param("count", "true"))
+        .andExpect(header().string("X-Total-Count", "3"))
+        .andExpect(header().exists("Link"));
+
+    mockMvc.perform(get("/kos").param("limit", "1").param("offset", "1"))
+        .andExpect(jsonPath("$[*].version").value(contains("v0.2.0")));
+  }
+
+  @Test
+  public void getAllObjectsCountsAWholeFirstPageWithoutScanningAgain() throws Exception {
+    shelfIndex();
+
+    mockMvc.perform(get("/kos").param("limit", "3"))
+        .andExpect(header().string("X-Total-Count", "3"))
+        .andExpect(header().doesNotExist("Link"));
+    mockMvc.perform(get("/kos").param("limit", "2").param("offset", "1"))
+        .andExpect(header().doesNotExist("X-Total-Count"))
+        .andExpect(header().doesNotExist("Link"));
+
+    verify(mockKnowledgeObjectRepository, never()).findAll();
+  }
+
+  @Test
+  public void getAllObjectsFiltersTheIndex() throws Exception {
+    shelfIndex();
+
+    mockMvc.perform(get("/kos").param("naan", "moon"))
+        .andExpect(header().string("X-Total-Count", "1"))
+        .andExpect(jsonPath("$[*].@id").value(contains("moon-pie")));
+    mockMvc.perform(get("/kos").param("keyword", "EXAMPLE"))
+        .andExpect(jsonPath("$[*].version").value(contains("v0.1.0", "v0.2.0")));
+    mockMvc.perform(get("/kos").param("hasServiceSpecification", "false"))
+        .andExpect(jsonPath("$[*].@id").value(contains("moon-pie")));
+  }
+
+  private void shelfIndex() throws IOException {
+    NavigableMap<ArkId, JsonNode> index = new TreeMap<>();
+    index.put(new ArkId("moon", "pie", "v1"), metadata(
+        "{\"@id\":\"moon-pie\",\"version\":\"v1\",\"title\":\"Moon Pie\"}"));
+    index.put(new ArkId("hello", "world", "v0.2.0"), metadata(
+        "{\"@id\":\"hello-world\",\"version\":\"v0.2.0\",\"keywords\":[\"Hello\",\"example\"],"
+            + "\"hasServiceSpecification\":\"service.yaml\"}"));
+    index.put(new ArkId("hello", "world", "v0.1.0"), metadata(
+        "{\"@id\":\"hello-world\",\"version\":\"v0.1.0\",\"title\":\"An example\","
+            + "\"hasServiceSpecification\":\"service.yaml\"}"));
+    lenient().when(mockKnowledgeObjectRepository.findAll()).thenReturn(index);
+    when(mockKnowledgeObjectRepository.findAllAfter(any())).thenAnswer(invocation -> {
+      ArkId after = invocation.getArgument(0);
+      return after == null ? index : index.tailMap(after, false);
+    });
+  }
+
+  private JsonNode metadata(String json) throws IOException {
+    return new ObjectMapper().readTree(json);
+  }
+
+  private File payloadFile() throws IOException {
+    File payload = folder.newFile("index.js");
+    FileUtils.write(payload, PAYLOAD, StandardCharsets.UTF_8);
+    when(mockKnowledgeObjectRepository.getBinaryOrMetadataResource(arkId, "src/index.js"))
+        .thenReturn(new FileSystemResource(payload));
+    return payload;
+  }
+
+  private String etag(File payload) {
+    return "\"" + Long.toHexString(payload.length()) + "-"
+        + Long.toHexString(payload.lastModified()) + "\"";
+  }
+
+  private String httpDate(long millis) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setDate("Date", millis);
+    return headers.getFirst("Date");
+  }
+
+  /**
+   * Only readable through ranges, as a store asked for part of a binary
+   */
+  private static class RangedByteArrayResource extends ByteArrayResource
+      implements RangedResource {
+
+    RangedByteArrayResource(byte[] bytes) {
+      super(bytes);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      throw new AssertionError("Whole binary read for a range");
+    }
+
+    @Override
+    public InputStream getInputStream(long position, long count) {
+      return new ByteArrayInputStream(getByteArray(), (int) position, (int) count);
+    }
+  }
+}
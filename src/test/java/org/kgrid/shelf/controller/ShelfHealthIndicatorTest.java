@@ -0,0 +1,48 @@
+package org.kgrid.shelf.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kgrid.shelf.repository.KnowledgeObjectRepository;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ShelfHealthIndicatorTest {
+
+  @Mock
+  private KnowledgeObjectRepository shelf;
+
+  @Test
+  public void healthIsReadFromTheIndexCountAndCached() {
+    when(shelf.isStoreAvailable()).thenReturn(true);
+    when(shelf.count()).thenReturn(4);
+    when(shelf.getConnection()).thenReturn("filesystem:file:///shelf");
+    ShelfHealthIndicator indicator = new ShelfHealthIndicator(shelf, 60000);
+
+    Health health = indicator.health();
+    indicator.health();
+
+    assertEquals(Status.UP, health.getStatus());
+    assertEquals(4, health.getDetails().get("numberOfKOs"));
+    verify(shelf, times(1)).isStoreAvailable();
+    verify(shelf, never()).findAll();
+  }
+
+  @Test
+  public void unreachableStoreIsDownOnceTheCacheExpires() {
+    when(shelf.isStoreAvailable()).thenReturn(true, false);
+    when(shelf.getConnection()).thenReturn("filesystem:file:///shelf");
+    ShelfHealthIndicator indicator = new ShelfHealthIndicator(shelf, 0);
+
+    assertEquals(Status.UP, indicator.health().getStatus());
+    assertEquals(Status.DOWN, indicator.health().getStatus());
+  }
+}
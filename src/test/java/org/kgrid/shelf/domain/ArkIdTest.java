@@ -4,6 +4,8 @@ import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 public class ArkIdTest {
 
@@ -23,7 +25,9 @@ public class ArkIdTest {
 
   @Test
   public void equalsContract() {
-    EqualsVerifier.forClass(ArkId.class).verify();
+    EqualsVerifier.forClass(ArkId.class)
+        .withCachedHashCode("hashCode", "calculateHashCode", new ArkId("hello", "world", "v1"))
+        .verify();
   }
 
   @Test
@@ -36,6 +40,35 @@ public class ArkIdTest {
     assertEquals(false, arkId.hasVersion());
   }
 
+  @Test
+  public void parsesEveryFormat() {
+    ArkId versioned = new ArkId("hello", "world", "v0.1");
+    ArkId unversioned = new ArkId("hello", "world");
+
+    assertEquals(unversioned, new ArkId("ark:/hello/world"));
+    assertEquals(unversioned, new ArkId("hello-world"));
+    assertEquals(versioned, new ArkId("ark:/hello/world/v0.1"));
+    assertEquals(versioned, new ArkId("hello-world/v0.1"));
+    assertEquals(versioned, new ArkId("hello-world-v0.1"));
+    assertFalse(ArkId.isValid("ark:/hello-world"));
+    assertFalse(ArkId.isValid("hello/world"));
+    assertFalse(ArkId.isValid("hello-world/v0.1/extra"));
+  }
+
+  @Test
+  public void createdArkIdsAreShared() {
+    assertSame(ArkId.create("hello-world/v1"), ArkId.create("hello-world/v1"));
+    assertEquals(new ArkId("hello-world/v1"), ArkId.create("hello-world/v1"));
+  }
+
+  @Test
+  public void createdArkIdsAreStillParsedWhenTheCacheIsFull() {
+    for (int i = 0; i <= 10000; i++) {
+      assertEquals(new ArkId("hello", "world" + i, "v1"), ArkId.create("hello-world" + i + "/v1"));
+    }
+    assertSame(ArkId.create("hello-world/v1"), ArkId.create("hello-world/v1"));
+  }
+
   @Test
   public void testCreatesArkIdCorrectly() {
     ArkId arkId = new ArkId("ark:/hello/world/v0.1");
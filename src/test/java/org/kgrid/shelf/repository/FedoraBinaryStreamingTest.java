@@ -0,0 +1,179 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kgrid.shelf.ShelfResourceNotFound;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+
+public class FedoraBinaryStreamingTest {
+
+  private static final long MODIFIED = 1577880000000L;
+
+  private HttpServer fcrepo;
+  private FedoraCDOStore store;
+  private final Map<String, byte[]> binaries = new ConcurrentHashMap<>();
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+  private final byte[] payload = new byte[3 * 1024 * 1024];
+  private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+  private volatile boolean honourRanges = true;
+  private volatile boolean headLength = true;
+
+  @Before
+  public void setUp() throws IOException {
+    new Random(42).nextBytes(payload);
+    fcrepo = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    fcrepo.createContext("/fcrepo/rest/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      requests.add(exchange.getRequestMethod() + " " + path + " "
+          + exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+      if ("PUT".equals(exchange.getRequestMethod())) {
+        binaries.put(path, StreamUtils.copyToByteArray(exchange.getRequestBody()));
+        exchange.sendResponseHeaders(201, -1);
+      } else if (!binaries.containsKey(path)) {
+        exchange.sendResponseHeaders(404, -1);
+      } else {
+        byte[] binary = binaries.get(path);
+        exchange.getResponseHeaders().add("Last-Modified", "Wed, 01 Jan 2020 12:00:00 GMT");
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+          ranges.add(range);
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+          if (headLength) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(binary.length));
+          }
+          exchange.sendResponseHeaders(200, -1);
+        } else if (range != null && honourRanges) {
+          int start = Integer.parseInt(range.substring(6, range.indexOf('-')));
+          int end = Integer.parseInt(range.substring(range.indexOf('-') + 1));
+          exchange.getResponseHeaders().add("Content-Range",
+              "bytes " + start + "-" + end + "/" + binary.length);
+          exchange.sendResponseHeaders(206, end - start + 1);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(binary, start, end - start + 1);
+          }
+        } else {
+          exchange.sendResponseHeaders(200, binary.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(binary);
+          }
+        }
+      }
+      exchange.close();
+    });
+    fcrepo.start();
+    store = new FedoraCDOStore("fedora:http://localhost:" + fcrepo.getAddress().getPort()
+        + "/fcrepo/rest/?user=fedoraAdmin&password=secret3");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    fcrepo.stop(0);
+  }
+
+  @Test
+  public void binaryIsUploadedInChunksWithoutClosingTheStream() throws IOException {
+    TrackingInputStream data = new TrackingInputStream(payload);
+
+    store.saveBinary(data, "hello-world", "model.bin");
+
+    assertEquals(Collections.singletonList("PUT /fcrepo/rest/hello-world/model.bin chunked"),
+        requests);
+    assertArrayEquals(payload, binaries.get("/fcrepo/rest/hello-world/model.bin"));
+    assertFalse(data.closed);
+  }
+
+  @Test
+  public void binaryIsOnlyDownloadedWhenRead() throws IOException {
+    binaries.put("/fcrepo/rest/hello-world/model.bin", payload);
+
+    Resource binary = store.getBinaryResource("hello-world", "model.bin");
+
+    assertEquals(payload.length, binary.contentLength());
+    assertEquals(MODIFIED, binary.lastModified());
+    assertEquals(1, requests.size());
+    try (InputStream content = binary.getInputStream()) {
+      assertArrayEquals(payload, StreamUtils.copyToByteArray(content));
+    }
+    assertTrue(requests.get(1).startsWith("GET /fcrepo/rest/hello-world/model.bin"));
+    assertEquals(1, store.getConnectionManager().getTotalStats().getAvailable());
+  }
+
+  @Test
+  public void rangeIsAskedOfFedora() throws IOException {
+    binaries.put("/fcrepo/rest/hello-world/model.bin", payload);
+    RangedResource binary = (RangedResource) store.getBinaryResource("hello-world", "model.bin");
+
+    try (InputStream content = binary.getInputStream(2_000_000, 1000)) {
+      assertArrayEquals(Arrays.copyOfRange(payload, 2_000_000, 2_001_000),
+          StreamUtils.copyToByteArray(content));
+    }
+    assertEquals(Collections.singletonList("bytes=2000000-2000999"), ranges);
+    assertEquals(1, store.getConnectionManager().getTotalStats().getAvailable());
+  }
+
+  @Test
+  public void rangeIsSkippedToWhenFedoraSendsEverything() throws IOException {
+    honourRanges = false;
+    binaries.put("/fcrepo/rest/hello-world/model.bin", payload);
+    RangedResource binary = (RangedResource) store.getBinaryResource("hello-world", "model.bin");
+
+    try (InputStream content = binary.getInputStream(2_000_000, 1000)) {
+      assertArrayEquals(Arrays.copyOfRange(payload, 2_000_000, 2_001_000),
+          StreamUtils.copyToByteArray(content));
+    }
+    assertEquals(0, store.getConnectionManager().getTotalStats().getLeased());
+  }
+
+  @Test
+  public void lengthMissingFromTheHeadIsReadFromARange() throws IOException {
+    headLength = false;
+    binaries.put("/fcrepo/rest/hello-world/model.bin", payload);
+
+    Resource binary = store.getBinaryResource("hello-world", "model.bin");
+
+    assertEquals(payload.length, binary.contentLength());
+    assertEquals(Collections.singletonList("bytes=0-0"), ranges);
+  }
+
+  @Test(expected = ShelfResourceNotFound.class)
+  public void missingBinaryIsNotFound() {
+    store.getBinaryResource("hello-world", "missing.bin");
+  }
+
+  private static class TrackingInputStream extends ByteArrayInputStream {
+
+    private boolean closed;
+
+    TrackingInputStream(byte[] data) {
+      super(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FedoraConnectionPoolTest {
+
+  private static final String KO_JSON = "{\"@id\":\"hello-world\",\"@type\":[\"ldp:RDFSource\"]}";
+
+  private HttpServer fcrepo;
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+  private FedoraCDOStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    fcrepo = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    fcrepo.createContext("/fcrepo/rest/", exchange -> {
+      clientPorts.add(exchange.getRemoteAddress().getPort());
+      byte[] body = KO_JSON.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/ld+json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    fcrepo.start();
+    store = new FedoraCDOStore("fedora:http://localhost:" + fcrepo.getAddress().getPort()
+        + "/fcrepo/rest/?user=fedoraAdmin&password=secret3&maxConnections=7"
+        + "&maxConnectionsPerRoute=3");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    fcrepo.stop(0);
+  }
+
+  @Test
+  public void poolSettingsAreReadFromTheUrl() {
+    assertEquals(7, store.getConnectionManager().getMaxTotal());
+    assertEquals(3, store.getConnectionManager().getDefaultMaxPerRoute());
+  }
+
+  @Test
+  public void requestsReuseOneConnection() {
+    store.getMetadata("hello-world");
+    store.isMetadata("hello-world");
+    store.getMetadata("hello-world");
+
+    assertEquals(1, clientPorts.size());
+    assertEquals(1, store.getConnectionManager().getTotalStats().getAvailable());
+  }
+
+  @Test
+  public void poolMetricsArePublished() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    new ShelfCacheMetrics(store).bindTo(registry);
+    store.getMetadata("hello-world");
+
+    assertEquals(7.0, registry.get("httpcomponents.httpclient.pool.total.max")
+        .tag("httpclient", "shelf.fedora").gauge().value(), 0);
+    assertEquals(1.0, registry.get("httpcomponents.httpclient.pool.total.connections")
+        .tag("httpclient", "shelf.fedora").tag("state", "available").gauge().value(), 0);
+  }
+}
@@ -0,0 +1,169 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kgrid.shelf.ShelfException;
+
+public class FedoraListingTest {
+
+  private static final List<String> TREE = Arrays.asList("a", "a/1", "a/2", "a/2/x", "b", "b/1");
+
+  private HttpServer fcrepo;
+  private String storagePath;
+  private final Map<String, Integer> listings = Collections.synchronizedMap(new HashMap<>());
+  private final Map<String, Integer> failures = Collections.synchronizedMap(new HashMap<>());
+
+  @Before
+  public void setUp() throws IOException {
+    fcrepo = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    storagePath = "http://localhost:" + fcrepo.getAddress().getPort() + "/fcrepo/rest/";
+    fcrepo.createContext("/fcrepo/rest/", exchange -> {
+      String container = exchange.getRequestURI().getPath().substring("/fcrepo/rest/".length());
+      listings.merge(container, 1, Integer::sum);
+      if (failures.containsKey(container)) {
+        exchange.sendResponseHeaders(failures.get(container), -1);
+        exchange.close();
+        return;
+      }
+      String contains = TREE.stream()
+          .filter(path -> isChild(container, path))
+          .map(path -> "\"" + storagePath + path + "\"")
+          .collect(Collectors.joining(","));
+      respond(exchange, "application/ld+json", "{\"@id\":\"" + storagePath + container
+          + "\",\"contains\":[" + contains + "]}");
+    });
+    fcrepo.createContext("/fuseki/query", exchange -> {
+      String bindings = TREE.stream()
+          .map(path -> "{\"x\":{\"type\":\"uri\",\"value\":\"" + storagePath + path + "\"}}")
+          .collect(Collectors.joining(","));
+      respond(exchange, "application/sparql-results+json",
+          "{\"head\":{\"vars\":[\"x\"]},\"results\":{\"bindings\":[" + bindings + "]}}");
+    });
+    fcrepo.start();
+  }
+
+  @After
+  public void tearDown() {
+    fcrepo.stop(0);
+  }
+
+  @Test
+  public void walksTheTreeDownToMaxDepth() throws IOException {
+    try (FedoraCDOStore store = store("&listingThreads=4")) {
+      assertEquals(Arrays.asList("a", "b"), store.getChildren(1, ""));
+      assertEquals(Arrays.asList("a", "b", "a/1", "a/2", "b/1"), store.getChildren(2, ""));
+      assertEquals(Arrays.asList("a/1", "a/2", "a/2/x"), store.getChildren(5, "a"));
+    }
+    assertEquals(Integer.valueOf(2), listings.get("a"));
+  }
+
+  @Test
+  public void listsTheTreeWithOneSparqlQuery() throws IOException {
+    try (FedoraCDOStore store = store("&sparqlEndpoint=http://localhost:"
+        + fcrepo.getAddress().getPort() + "/fuseki/query")) {
+      assertEquals(Arrays.asList("a", "a/1", "a/2", "b", "b/1"), store.getChildren(2, ""));
+      assertEquals(Arrays.asList("a/1", "a/2"), store.getChildren(1, "a"));
+    }
+    assertEquals(Collections.emptyMap(), listings);
+  }
+
+  @Test
+  public void walksTheTreeWhenTheSparqlQueryFails() throws IOException {
+    try (FedoraCDOStore store = store("&sparqlEndpoint=http://localhost:"
+        + fcrepo.getAddress().getPort() + "/missing/query")) {
+      assertEquals(Arrays.asList("a", "b", "a/1", "a/2", "b/1"), store.getChildren(2, ""));
+    }
+  }
+
+  @Test
+  public void walksTheTreeWhenTheSparqlAnswerIsMalformed() throws IOException {
+    fcrepo.createContext("/broken/query",
+        exchange -> respond(exchange, "application/sparql-results+json", "{\"head\":"));
+    try (FedoraCDOStore store = store("&sparqlEndpoint=http://localhost:"
+        + fcrepo.getAddress().getPort() + "/broken/query")) {
+      assertEquals(Arrays.asList("a", "b", "a/1", "a/2", "b/1"), store.getChildren(2, ""));
+    }
+  }
+
+  @Test
+  public void descendantsDeletedWhileWalkingHaveNoChildren() throws IOException {
+    failures.put("a/2", 404);
+    try (FedoraCDOStore store = store("")) {
+      assertEquals(Arrays.asList("a", "b", "a/1", "a/2", "b/1"), store.getChildren(3, ""));
+    }
+  }
+
+  @Test(expected = ShelfException.class)
+  public void descendantThatCannotBeListedFailsTheListing() throws IOException {
+    failures.put("a", 403);
+    try (FedoraCDOStore store = store("")) {
+      store.getChildren(2, "");
+    }
+  }
+
+  @Test(expected = ShelfException.class)
+  public void startThatCannotBeListedFailsTheListing() throws IOException {
+    failures.put("", 401);
+    try (FedoraCDOStore store = store("")) {
+      store.getChildren(1, "");
+    }
+  }
+
+  @Test(expected = ShelfException.class)
+  public void unreachableFedoraFailsTheListing() throws IOException {
+    fcrepo.stop(0);
+    try (FedoraCDOStore store = store("")) {
+      store.getChildren(1, "");
+    }
+  }
+
+  @Test
+  public void listingsShareTheStoreThreads() throws IOException {
+    FedoraCDOStore store = store("&listingThreads=2");
+    try {
+      for (int i = 0; i < 3; i++) {
+        store.getChildren(3, "");
+      }
+      assertEquals(2, store.getListingExecutor().getLargestPoolSize());
+    } finally {
+      store.close();
+    }
+    assertTrue(store.getListingExecutor().isShutdown());
+  }
+
+  private FedoraCDOStore store(String parameters) {
+    return new FedoraCDOStore("fedora:" + storagePath + "?user=fedoraAdmin&password=secret3"
+        + parameters);
+  }
+
+  private static boolean isChild(String container, String path) {
+    String prefix = container.isEmpty() ? "" : container + "/";
+    return path.startsWith(prefix) && !path.substring(prefix.length()).contains("/");
+  }
+
+  private static void respond(HttpExchange exchange, String contentType, String json)
+      throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", contentType);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -1,11 +1,17 @@
 package org.kgrid.shelf.repository;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -14,6 +20,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -24,6 +32,8 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.kgrid.shelf.ShelfResourceNotFound;
 import org.kgrid.shelf.domain.ArkId;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
 
 public class FilesystemCDOStoreTest {
 
@@ -54,6 +64,133 @@ public class FilesystemCDOStoreTest {
     ObjectNode koNode = koStore.getMetadata("hello-world-v0.1.0");
     assertEquals("Hello World Title", koNode.findValue("title").textValue());
   }
+  @Test
+  public void metadataIsServedFromCacheUntilFileChanges() throws IOException {
+    MetadataCache cache = ((FilesystemCDOStore) koStore).getMetadataCache();
+    koStore.getMetadata("hello-world-v0.1.0");
+    ObjectNode cached = koStore.getMetadata("hello-world-v0.1.0");
+    assertEquals(1, cache.getCounters().getMisses());
+    assertEquals(1, cache.getCounters().getHits());
+
+    cached.put("title", "Changed by caller");
+    assertEquals("Hello World Title",
+        koStore.getMetadata("hello-world-v0.1.0").get("title").asText());
+
+    File metadata = new File(folder.getRoot(), "hello-world-v0.1.0/metadata.json");
+    FileUtils.writeStringToFile(metadata,
+        FileUtils.readFileToString(metadata, "UTF-8").replace("Hello World Title", "Changed"),
+        "UTF-8");
+    metadata.setLastModified(metadata.lastModified() + 2000);
+    assertEquals("Changed", koStore.getMetadata("hello-world-v0.1.0").get("title").asText());
+  }
+
+  @Test
+  public void metadataCacheSizeIsConfigurable() {
+    FilesystemCDOStore uncached = new FilesystemCDOStore(
+        "filesystem:" + folder.getRoot().toURI() + "?metadataCacheSize=0");
+    uncached.getMetadata("hello-world-v0.1.0");
+    uncached.getMetadata("hello-world-v0.1.0");
+    assertEquals(0, uncached.getMetadataCache().size());
+    assertEquals(0, uncached.getMetadataCache().getCounters().getHits());
+  }
+
+  @Test
+  public void cacheMetricsArePublished() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    new ShelfCacheMetrics(koStore).bindTo(registry);
+    koStore.getMetadata("hello-world-v0.1.0");
+    koStore.getMetadata("hello-world-v0.1.0");
+
+    assertEquals(1.0, registry.get("cache.gets").tag("cache", "shelf.metadata")
+        .tag("result", "hit").functionCounter().count(), 0);
+  }
+
+  @Test
+  public void binaryResourceIsReadFromTheFile() throws IOException {
+    Resource binary = koStore.getBinaryResource("hello-world-v0.1.0", "src", "index.js");
+
+    try (ReadableByteChannel channel = binary.readableChannel()) {
+      assertTrue(channel instanceof FileChannel);
+    }
+    assertArrayEquals(koStore.getBinary("hello-world-v0.1.0", "src", "index.js"),
+        StreamUtils.copyToByteArray(binary.getInputStream()));
+  }
+
+  @Test(expected = ShelfResourceNotFound.class)
+  public void binaryResourceNotFound() {
+    koStore.getBinaryResource("hello-world-v0.1.0", "src");
+  }
+
+  @Test
+  public void commitMovesStagedObjectIntoShelf() {
+    String trxId = koStore.createTransaction();
+    koStore.createContainer(trxId, "new-ko-v1");
+    koStore.saveBinary("console.log('new')".getBytes(), trxId, "new-ko-v1", "src", "index.js");
+
+    koStore.commitTransaction(trxId);
+
+    assertEquals("console.log('new')", new String(koStore.getBinary("new-ko-v1", "src", "index.js")));
+    assertFalse(Files.exists(Paths.get(koStore.getAbsoluteLocation(""), trxId)));
+  }
+
+  @Test
+  public void commitReplacesObjectAlreadyOnShelf() {
+    String trxId = koStore.createTransaction();
+    koStore.createContainer(trxId, "hello-world-v0.1.0");
+    koStore.saveBinary("{}".getBytes(), trxId, "hello-world-v0.1.0", "metadata.json");
+
+    koStore.commitTransaction(trxId);
+
+    assertEquals(0, koStore.getMetadata("hello-world-v0.1.0").size());
+    assertFalse(Files.exists(Paths.get(koStore.getAbsoluteLocation("hello-world-v0.1.0", "service.yaml"))));
+    assertFalse(Files.exists(Paths.get(koStore.getAbsoluteLocation(""), trxId)));
+  }
+
+  @Test
+  public void readsDuringReplaceSeeOldOrNewObject() throws InterruptedException {
+    AtomicBoolean committing = new AtomicBoolean(true);
+    List<Throwable> readErrors = new CopyOnWriteArrayList<>();
+    // Opened long after it was resolved, as downloads and exports may be
+    Resource binary = koStore.getBinaryResource("hello-world-v0.1.0", "metadata.json");
+    Thread reader = new Thread(() -> {
+      while (committing.get()) {
+        try {
+          koStore.getMetadata("hello-world-v0.1.0");
+          koStore.getBinary("hello-world-v0.1.0", "metadata.json");
+        } catch (RuntimeException e) {
+          readErrors.add(e);
+        }
+      }
+    });
+    Thread streamer = new Thread(() -> {
+      while (committing.get()) {
+        try (InputStream content = binary.getInputStream()) {
+          StreamUtils.copyToByteArray(content);
+        } catch (IOException e) {
+          readErrors.add(e);
+        }
+      }
+    });
+    reader.start();
+    streamer.start();
+    try {
+      for (int i = 0; i < 500; i++) {
+        String trxId = koStore.createTransaction();
+        koStore.createContainer(trxId, "hello-world-v0.1.0");
+        koStore.saveBinary(("{\"version\":" + i + "}").getBytes(), trxId, "hello-world-v0.1.0",
+            "metadata.json");
+        koStore.commitTransaction(trxId);
+      }
+    } finally {
+      committing.set(false);
+      reader.join();
+      streamer.join();
+    }
+
+    assertEquals(Collections.emptyList(), readErrors);
+    assertEquals(499, koStore.getMetadata("hello-world-v0.1.0").get("version").asInt());
+  }
+
   @Test
   public void testURIPathWindows(){
     String connectionURL = "filesystem:" + folder.getRoot().toURI();
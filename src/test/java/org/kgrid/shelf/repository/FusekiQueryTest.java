@@ -0,0 +1,108 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kgrid.shelf.domain.ArkId;
+
+public class FusekiQueryTest {
+
+  private HttpServer fuseki;
+  private FusekiClient client;
+  private final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+
+  @Before
+  public void setUp() throws IOException {
+    fuseki = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    fuseki.createContext("/fuseki/test/query", exchange -> {
+      String query = URLDecoder.decode(
+          StringUtils.substringAfter(exchange.getRequestURI().getRawQuery(), "query="), "UTF-8");
+      queries.add(query);
+      if (query.contains("CONSTRUCT")) {
+        respond(exchange, "text/turtle",
+            "<http://fcrepo/rest/a> <http://purl.org/dc/elements/1.1/title> \"A\" ;\n"
+                + "  <http://purl.org/dc/elements/1.1/identifier> \"ark:/a/1\", \"ark:/a/2\" .\n"
+                + "<http://fcrepo/rest/b> <http://purl.org/dc/elements/1.1/title> \"B\" .\n");
+      } else {
+        respond(exchange, "application/sparql-results+json",
+            "{\"head\":{\"vars\":[\"x\"]},\"results\":{\"bindings\":[]}}");
+      }
+    });
+    fuseki.start();
+    client = new FusekiClient(
+        "http://localhost:" + fuseki.getAddress().getPort() + "/fuseki/test/query");
+  }
+
+  @After
+  public void tearDown() {
+    fuseki.stop(0);
+  }
+
+  @Test
+  public void queriesAreBuiltFromTheBundledContext() {
+    client.getAllKnowledgeObjects();
+    client.getAllKnowledgeObjects();
+
+    assertEquals(2, queries.size());
+    assertEquals(queries.get(0), queries.get(1));
+    assertTrue(queries.get(0).contains("<http://purl.org/dc/elements/1.1/title>"));
+    assertTrue(queries.get(0).contains("<http://kgrid.org/koio#KnowledgeObject>"));
+  }
+
+  @Test
+  public void constructedTriplesAreGatheredBySubject() throws IOException {
+    JsonNode graph = client.getAllKnowledgeObjects();
+
+    assertEquals(ShelfMappers.getDefault().jsonReader().readTree(
+        "{\"@context\":\"http://kgrid.org/koio/contexts/knowledgeobject.jsonld\","
+            + "\"@graph\":[{\"@id\":\"http://fcrepo/rest/a\",\"title\":\"A\","
+            + "\"identifier\":[\"ark:/a/1\",\"ark:/a/2\"]},"
+            + "{\"@id\":\"http://fcrepo/rest/b\",\"title\":\"B\"}]}"), graph);
+  }
+
+  @Test
+  public void pagesAreSelectedByAnOrderedSubQuery() {
+    client.getAllKnowledgeObjectImpls(20, 10);
+    client.getAllKnowledgeObjectImpls(30, 10);
+
+    assertTrue(queries.get(0).matches(
+        "(?s).*SELECT\\s+\\?x.*ORDER BY \\?x\\s+OFFSET\\s+20\\s+LIMIT\\s+10.*"));
+    assertTrue(queries.get(1).matches("(?s).*OFFSET\\s+30\\s+LIMIT\\s+10.*"));
+    assertTrue(queries.get(0).contains("<http://kgrid.org/koio#Implementation>"));
+  }
+
+  @Test
+  public void arkIsBoundIntoTheQueryTemplate() {
+    client.getImplListOfKO(new ArkId("hello", "world"));
+    client.getImplListOfKO(new ArkId("hello", "moon"));
+
+    assertTrue(queries.get(0).contains("strends(str(?parent), \"hello-world\")"));
+    assertTrue(queries.get(1).contains("strends(str(?parent), \"hello-moon\")"));
+    assertEquals(queries.get(0), queries.get(1).replace("hello-moon", "hello-world"));
+  }
+
+  private static void respond(HttpExchange exchange, String contentType, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", contentType);
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+public class ImportStagingTest {
+
+  @Test
+  public void binariesWithinBudgetStayInMemory() throws IOException {
+    ImportMemoryBudget budget = new ImportMemoryBudget(100);
+    try (ImportStaging staging = new ImportStaging(budget)) {
+      staging.stage("ko/small.js", new ByteArrayInputStream(new byte[60]));
+
+      assertFalse(staging.getBinaries().get("ko/small.js").isSpilled());
+      assertEquals(40, budget.getAvailable());
+    }
+    assertEquals(100, budget.getAvailable());
+  }
+
+  @Test
+  public void binariesOverBudgetAreSpilledToFiles() throws IOException {
+    ImportMemoryBudget budget = new ImportMemoryBudget(100);
+    byte[] large = new byte[1000];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = (byte) i;
+    }
+    try (ImportStaging staging = new ImportStaging(budget)) {
+      staging.stage("ko/small.js", new ByteArrayInputStream(new byte[60]));
+      staging.stage("ko/large.bin", new ByteArrayInputStream(large));
+
+      ImportStaging.StagedBinary staged = staging.getBinaries().get("ko/large.bin");
+      assertTrue(staged.isSpilled());
+      assertEquals(40, budget.getAvailable());
+      try (InputStream data = staged.open()) {
+        assertArrayEquals(large, StreamUtils.copyToByteArray(data));
+      }
+    }
+    assertEquals(100, budget.getAvailable());
+  }
+
+  @Test
+  public void budgetIsSharedBetweenImports() throws IOException {
+    ImportMemoryBudget budget = new ImportMemoryBudget(100);
+    try (ImportStaging first = new ImportStaging(budget);
+        ImportStaging second = new ImportStaging(budget)) {
+      first.stage("ko/a.js", new ByteArrayInputStream(new byte[80]));
+      second.stage("ko/b.js", new ByteArrayInputStream(new byte[80]));
+
+      assertFalse(first.getBinaries().get("ko/a.js").isSpilled());
+      assertTrue(second.getBinaries().get("ko/b.js").isSpilled());
+    }
+    assertEquals(100, budget.getAvailable());
+  }
+
+  @Test
+  public void binariesInMemoryHoldOnlyTheirOwnBytes() throws IOException {
+    ImportMemoryBudget budget = new ImportMemoryBudget(1024 * 1024);
+    byte[] binary = new byte[200 * 1024 + 7];
+    for (int i = 0; i < binary.length; i++) {
+      binary[i] = (byte) i;
+    }
+    try (ImportStaging staging = new ImportStaging(budget)) {
+      staging.stage("ko/chunked.bin", new ByteArrayInputStream(binary));
+
+      ImportStaging.StagedBinary staged = staging.getBinaries().get("ko/chunked.bin");
+      assertFalse(staged.isSpilled());
+      assertEquals(1024 * 1024 - binary.length, budget.getAvailable());
+      try (InputStream data = staged.open()) {
+        assertArrayEquals(binary, StreamUtils.copyToByteArray(data));
+      }
+    }
+    assertEquals(1024 * 1024, budget.getAvailable());
+  }
+
+  @Test
+  public void failedReadReleasesItsBudget() {
+    ImportMemoryBudget budget = new ImportMemoryBudget(1024 * 1024);
+    InputStream failing = new SequenceInputStream(new ByteArrayInputStream(new byte[100 * 1024]),
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("truncated zip");
+          }
+        });
+    try (ImportStaging staging = new ImportStaging(budget)) {
+      staging.stage("ko/broken.bin", failing);
+      fail("A binary that can't be read should not be staged");
+    } catch (IOException expected) {
+    }
+    assertEquals(1024 * 1024, budget.getAvailable());
+  }
+}
@@ -1,15 +1,26 @@
 package org.kgrid.shelf.repository;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardWatchEventKinds;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -21,6 +32,7 @@ import org.junit.runners.JUnit4;
 import org.kgrid.shelf.ShelfException;
 import org.kgrid.shelf.ShelfResourceNotFound;
 import org.kgrid.shelf.domain.ArkId;
+import org.mockito.Mockito;
 
 @RunWith(JUnit4.class)
 public class KnowledgeObjectRepositoryTest {
@@ -89,6 +101,144 @@ public class KnowledgeObjectRepositoryTest {
     assertEquals("hello-world", objects.get(new ArkId("hello", "world", "v0.1.0")).get("@id").asText());
   }
 
+  @Test
+  public void parallelIndexMatchesSequentialIndex() {
+    KnowledgeObjectRepository parallelRepository = new KnowledgeObjectRepository(
+        compoundDigitalObjectStore, zipImportService, zipExportService, ShelfMappers.getDefault(),
+        4, false);
+
+    assertEquals(repository.findAll().keySet(), parallelRepository.findAll().keySet());
+    assertNotNull(parallelRepository.findKnowledgeObjectMetadata(helloFolder));
+  }
+
+  @Test
+  public void snapshotOnlyRereadsChangedFolders() throws IOException {
+    KnowledgeObjectRepository snapshotRepository = new KnowledgeObjectRepository(
+        compoundDigitalObjectStore, zipImportService, zipExportService, ShelfMappers.getDefault(),
+        1, true);
+    snapshotRepository.destroy();
+    assertTrue(new File(folder.getRoot(), KnowledgeObjectIndexSnapshot.SNAPSHOT_FILENAME).exists());
+
+    File metadata = new File(folder.getRoot(), "hello-world-v0.2.0/metadata.json");
+    FileUtils.writeStringToFile(metadata,
+        FileUtils.readFileToString(metadata, "UTF-8").replace("Hello World Title", "Changed"),
+        "UTF-8");
+    metadata.setLastModified(metadata.lastModified() + 2000);
+
+    CompoundDigitalObjectStore spyStore = Mockito.spy(compoundDigitalObjectStore);
+    snapshotRepository = new KnowledgeObjectRepository(
+        spyStore, zipImportService, zipExportService, ShelfMappers.getDefault(), 1, true);
+    verify(spyStore, times(1)).getMetadata("hello-world-v0.2.0");
+    verify(spyStore, never()).getMetadata("hello-world-v0.1.0");
+    verify(spyStore, never()).getMetadata("hello-world-v0.3.0");
+
+    Map<ArkId, JsonNode> objects = snapshotRepository.findAll();
+    assertEquals(4, objects.size());
+    assertEquals("Changed",
+        objects.get(new ArkId("hello", "world", "v0.2.0")).get("title").asText());
+    assertEquals("Hello World Title", objects.get(helloWorldArkId).get("title").asText());
+    assertFalse(FileUtils.readFileToString(
+        new File(folder.getRoot(), KnowledgeObjectIndexSnapshot.SNAPSHOT_FILENAME), "UTF-8")
+        .contains("Hello World Title"));
+  }
+
+  @Test
+  public void importZipAddsObjectToIndex() {
+    InputStream zipStream = KnowledgeObjectRepositoryTest.class
+        .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip");
+    repository.importZip(zipStream);
+
+    Map<ArkId, JsonNode> objects = repository.findAll();
+    assertEquals(5, objects.size());
+    assertEquals(5, repository.count());
+    assertNotNull(repository.findKnowledgeObjectMetadata(new ArkId("hello", "world", "v3")));
+
+    repository.importZip(KnowledgeObjectRepositoryTest.class
+        .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"));
+    assertEquals(5, repository.count());
+  }
+
+  @Test
+  public void deleteRemovesObjectFromIndex() {
+    repository.delete(new ArkId("hello", "world", "v0.2.0"));
+
+    Map<ArkId, JsonNode> objects = repository.findAll();
+    assertEquals(3, objects.size());
+    assertEquals(3, repository.count());
+    assertFalse(objects.containsKey(new ArkId("hello", "world", "v0.2.0")));
+  }
+
+  @Test
+  public void deleteWithoutVersionFails() {
+    try {
+      repository.delete(new ArkId("hello", "world"));
+      fail("Deleting without a version should fail");
+    } catch (ShelfResourceNotFound expected) {
+    }
+    assertEquals(4, repository.count());
+    assertTrue(new File(folder.getRoot(), "hello-world-v0.1.0").exists());
+  }
+
+  @Test
+  public void unknownLocationOnlyReadsItsOwnFolder() throws IOException {
+    File copied = new File(folder.getRoot(), "hello-world-v0.4.0");
+    FileUtils.copyDirectory(new File(folder.getRoot(), "hello-world-v0.3.0"), copied);
+    File metadata = new File(copied, "metadata.json");
+    FileUtils.writeStringToFile(metadata,
+        FileUtils.readFileToString(metadata, "UTF-8").replace("v0.3.0", "v0.4.0"), "UTF-8");
+
+    CompoundDigitalObjectStore spyStore = Mockito.spy(compoundDigitalObjectStore);
+    repository = new KnowledgeObjectRepository(spyStore, zipImportService, zipExportService);
+    Mockito.clearInvocations(spyStore);
+
+    assertEquals("hello-world-v0.4.0",
+        repository.getObjectLocation(new ArkId("hello", "world", "v0.4.0")));
+    assertNull(repository.getObjectLocation(new ArkId("hello", "world", "v0.9.0")));
+    verify(spyStore, never()).getChildren(Mockito.anyInt(), Mockito.any());
+    verify(spyStore, never()).getMetadata("hello-world-v0.1.0");
+  }
+
+  @Test
+  public void shelfEventsUpdateIndex() throws IOException {
+    File folderOnShelf = new File(folder.getRoot(), "hello-world-v0.3.0");
+    FileUtils.deleteDirectory(folderOnShelf);
+    repository.onEvent(folderOnShelf.toPath(), StandardWatchEventKinds.ENTRY_DELETE);
+    assertEquals(3, repository.findAll().size());
+    assertEquals(3, repository.count());
+
+    FileUtils.copyDirectory(new File("src/test/resources/shelf/hello-world-v0.3.0"), folderOnShelf);
+    repository.onEvent(folderOnShelf.toPath(), StandardWatchEventKinds.ENTRY_CREATE);
+    assertEquals(4, repository.findAll().size());
+    assertEquals(4, repository.count());
+    assertTrue(repository.isStoreAvailable());
+  }
+
+  @Test
+  public void readersNeverSeeAPartialIndex() throws Exception {
+    AtomicBoolean importing = new AtomicBoolean(true);
+    AtomicReference<Throwable> readerError = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      try {
+        while (importing.get()) {
+          repository.findAll().values().forEach(metadata -> metadata.get("@id"));
+          assertNotNull(repository.findKnowledgeObjectMetadata(helloWorldArkId));
+        }
+      } catch (Throwable e) {
+        readerError.set(e);
+      }
+    });
+    reader.start();
+    for (int i = 0; i < 5; i++) {
+      repository.importZip(KnowledgeObjectRepositoryTest.class
+          .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"));
+      repository.delete(new ArkId("hello", "world", "v3"));
+    }
+    importing.set(false);
+    reader.join();
+
+    assertNull(readerError.get());
+  }
+
   @Test
   public void testEditMainMetadata() {
     String testdata = "{\"test\":\"data\"}";
@@ -106,6 +256,42 @@ public class KnowledgeObjectRepositoryTest {
 
   }
 
+  @Test
+  public void serviceSpecificationIsCachedUntilTheObjectChanges() throws IOException {
+    repository.findServiceSpecification(helloWorldArkId);
+    File serviceSpec = new File(folder.getRoot(), "hello-world-v0.1.0/service.yaml");
+    FileUtils.write(serviceSpec, "info:\n  title: Changed\n", StandardCharsets.UTF_8);
+
+    assertEquals("Hello, World",
+        repository.findServiceSpecification(helloWorldArkId).path("info").path("title").asText());
+    assertEquals(1, repository.getSpecificationCache().getCounters().getHits());
+
+    repository.onEvent(serviceSpec.toPath(), StandardWatchEventKinds.ENTRY_MODIFY);
+    assertEquals("Changed",
+        repository.findServiceSpecification(helloWorldArkId).path("info").path("title").asText());
+  }
+
+  @Test
+  public void serviceSpecificationIsRenderedAsJsonAndYaml() throws IOException {
+    JsonNode serviceSpecNode = repository.findServiceSpecification(helloWorldArkId);
+
+    assertEquals(serviceSpecNode, ShelfMappers.getDefault().jsonReader()
+        .readValue(repository.findServiceSpecificationJson(helloWorldArkId)));
+    assertEquals(serviceSpecNode, ShelfMappers.getDefault().yamlReader()
+        .readValue(repository.findServiceSpecificationYaml(helloWorldArkId)));
+  }
+
+  @Test
+  public void deletingAnObjectDropsItsSpecifications() {
+    ArkId arkId = new ArkId("hello", "world", "v0.2.0");
+    repository.findServiceSpecification(arkId);
+    repository.findServiceSpecification(helloWorldArkId);
+    assertEquals(2, repository.getSpecificationCache().size());
+
+    repository.delete(arkId);
+    assertEquals(1, repository.getSpecificationCache().size());
+  }
+
   @Test(expected = ShelfResourceNotFound.class)
   public void findServiceSpecificationNotFound()  {
 
@@ -0,0 +1,52 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetadataCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final MetadataCache cache = new MetadataCache(10);
+
+  @Test
+  public void metadataParsedAcrossAnInvalidationIsNotCached() throws Exception {
+    Path file = metadataFile();
+
+    cache.get(file, () -> {
+      // Replaced by a file of the same size and modification time while it was parsed
+      cache.invalidateAll(file.getParent());
+      return metadata("old");
+    });
+
+    assertEquals("new", cache.get(file, () -> metadata("new")).get("title").asText());
+  }
+
+  @Test
+  public void unchangedMetadataIsParsedOnce() throws Exception {
+    Path file = metadataFile();
+
+    cache.get(file, () -> metadata("old"));
+
+    assertEquals("old", cache.get(file, () -> metadata("new")).get("title").asText());
+  }
+
+  private Path metadataFile() throws IOException {
+    Path file = folder.newFolder("hello-world").toPath().resolve("metadata.json");
+    Files.write(file, "{}".getBytes());
+    return file;
+  }
+
+  private static ObjectNode metadata(String title) {
+    return JsonNodeFactory.instance.objectNode().put("title", title);
+  }
+}
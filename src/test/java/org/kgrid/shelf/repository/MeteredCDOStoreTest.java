@@ -0,0 +1,117 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kgrid.shelf.ShelfResourceNotFound;
+import org.kgrid.shelf.domain.ArkId;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+
+public class MeteredCDOStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private FilesystemCDOStore filesystemStore;
+
+  @Before
+  public void setUp() throws Exception {
+    FileUtils.copyDirectory(new File("src/test/resources/shelf"), folder.getRoot());
+    filesystemStore = new FilesystemCDOStore("filesystem:" + folder.getRoot().toURI());
+  }
+
+  @Test
+  public void callsAreTimedByOperationStoreAndOutcome() {
+    MeteredCDOStore store = new MeteredCDOStore(filesystemStore, registry);
+
+    store.getMetadata("hello-world-v0.1.0");
+    store.getMetadata("hello-world-v0.1.0");
+    try {
+      store.getMetadata("hello-missing");
+      fail("missing metadata should not be found");
+    } catch (ShelfResourceNotFound expected) {
+    }
+
+    assertEquals(2, registry.get(MeteredCDOStore.REQUESTS).tag("operation", "getMetadata")
+        .tag("store", "filesystem").tag("outcome", "SUCCESS").timer().count());
+    assertEquals(1, registry.get(MeteredCDOStore.REQUESTS).tag("operation", "getMetadata")
+        .tag("outcome", "NOT_FOUND").timer().count());
+  }
+
+  @Test
+  public void binarySizesAreRecorded() {
+    MeteredCDOStore store = new MeteredCDOStore(filesystemStore, registry);
+    store.createContainer("metered");
+
+    store.saveBinary(new byte[100], "metered", "a.bin");
+    store.saveBinary(new ByteArrayInputStream(new byte[300]), "metered", "b.bin");
+    store.getBinary("metered", "b.bin");
+
+    assertEquals(400, registry.get(MeteredCDOStore.BYTES).tag("operation", "saveBinary")
+        .summary().totalAmount(), 0);
+    assertEquals(300, registry.get(MeteredCDOStore.BYTES).tag("operation", "getBinary")
+        .summary().totalAmount(), 0);
+  }
+
+  @Test
+  public void binaryResourceReadsAreRecordedWhenClosed() throws Exception {
+    MeteredCDOStore store = new MeteredCDOStore(filesystemStore, registry);
+    store.createContainer("metered");
+    store.saveBinary(new byte[300], "metered", "b.bin");
+
+    Resource binary = store.getBinaryResource("metered", "b.bin");
+    try (InputStream stream = binary.getInputStream()) {
+      StreamUtils.copy(stream, new ByteArrayOutputStream());
+      assertEquals(0, registry.find(MeteredCDOStore.BYTES)
+          .tag("operation", "readBinaryResource").summaries().size());
+    }
+    try (ReadableByteChannel channel = binary.readableChannel()) {
+      assertTrue(channel instanceof FileChannel);
+      ((FileChannel) channel).transferTo(100, 200, Channels.newChannel(new ByteArrayOutputStream()));
+    }
+
+    assertEquals(500, registry.get(MeteredCDOStore.BYTES).tag("operation", "readBinaryResource")
+        .summary().totalAmount(), 0);
+    assertEquals(2, registry.get(MeteredCDOStore.REQUESTS).tag("operation", "readBinaryResource")
+        .tag("outcome", "SUCCESS").timer().count());
+  }
+
+  @Test
+  public void repositoryRecordsRebuildsAndZipSizes() throws Exception {
+    KnowledgeObjectRepository repository = new KnowledgeObjectRepository(filesystemStore,
+        new ZipImportService(), new ZipExportService(), ShelfMappers.getDefault(), 1, false,
+        Optional.of(registry));
+
+    try (InputStream zip = MeteredCDOStoreTest.class
+        .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip")) {
+      repository.importZip(zip);
+    }
+    ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    repository.extractZip(new ArkId("hello", "world", "v3"), exported);
+
+    assertEquals(1, registry.get("shelf.index.rebuilds").timer().count());
+    assertEquals(new File("src/test/resources/fixtures/import-export/hello-world-v3.zip").length(),
+        registry.get("shelf.import.size").summary().totalAmount(), 0);
+    assertEquals(exported.size(), registry.get("shelf.export.size").summary().totalAmount(), 0);
+    assertEquals(repository.count(), registry.get("shelf.kos").gauge().value(), 0);
+    assertEquals(1, registry.get(MeteredCDOStore.REQUESTS).tag("operation", "commitTransaction")
+        .timer().count());
+  }
+}
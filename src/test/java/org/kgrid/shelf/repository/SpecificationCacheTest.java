@@ -0,0 +1,40 @@
+package org.kgrid.shelf.repository;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Test;
+
+public class SpecificationCacheTest {
+
+  private final SpecificationCache cache = new SpecificationCache(10, ShelfMappers.getDefault());
+
+  @Test
+  public void specificationLoadedAcrossAnInvalidationIsNotCached() {
+    cache.get("hello-world", "service.yaml", () -> {
+      // Re-imported while the old specification was being read
+      cache.invalidate("hello-world");
+      return spec("old");
+    });
+
+    JsonNode spec = cache.get("hello-world", "service.yaml", () -> spec("new")).getNode();
+
+    assertEquals("new", spec.get("title").asText());
+  }
+
+  @Test
+  public void specificationsAreCachedUntilInvalidated() {
+    cache.get("hello-world", "service.yaml", () -> spec("old"));
+
+    assertEquals("old", cache.get("hello-world", "service.yaml", () -> spec("new"))
+        .getNode().get("title").asText());
+    cache.invalidate("hello-world");
+    assertEquals("new", cache.get("hello-world", "service.yaml", () -> spec("new"))
+        .getNode().get("title").asText());
+  }
+
+  private static JsonNode spec(String title) {
+    return JsonNodeFactory.instance.objectNode().put("title", title);
+  }
+}
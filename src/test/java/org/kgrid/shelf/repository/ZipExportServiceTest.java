@@ -3,6 +3,7 @@ package org.kgrid.shelf.repository;
 import static java.nio.file.FileVisitOption.FOLLOW_LINKS;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -10,14 +11,19 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.kgrid.shelf.ShelfResourceNotFound;
 import org.kgrid.shelf.domain.ArkId;
 import org.zeroturnaround.zip.ZipUtil;
 
@@ -93,6 +99,57 @@ public class ZipExportServiceTest {
 
   }
 
+  @Test
+  public void exportStreamsIntoCallersOutputStream() throws IOException {
+
+    ZipExportService zipExportService = new ZipExportService();
+    AtomicBoolean closed = new AtomicBoolean();
+    ByteArrayOutputStream zipBytes = new ByteArrayOutputStream() {
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+
+    zipExportService.exportObject(
+        new ArkId("hello", "world", "v2"), "hello-world-v2", compoundDigitalObjectStore, zipBytes);
+
+    assertFalse(closed.get());
+    List<String> entries = new ArrayList<>();
+    try (ZipInputStream zip = new ZipInputStream(
+        new ByteArrayInputStream(zipBytes.toByteArray()))) {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        entries.add(entry.getName());
+      }
+    }
+    assertEquals(3, entries.size());
+    assertTrue(entries.contains("hello-world-v2/dist/main.js"));
+    assertEquals("hello-world-v2/metadata.json", entries.get(entries.size() - 1));
+  }
+
+  @Test
+  public void exportWritesNothingWhenBinaryIsMissing() throws IOException {
+
+    ZipExportService zipExportService = new ZipExportService();
+    Path missingBinary = temporaryFolder.getRoot().toPath().resolve("missing-binary-v2");
+    FileUtils.copyDirectory(
+        temporaryFolder.getRoot().toPath().resolve("hello-world-v2").toFile(),
+        missingBinary.toFile());
+    Files.delete(missingBinary.resolve("dist").resolve("main.js"));
+    ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+
+    try {
+      zipExportService.exportObject(
+          new ArkId("hello", "world", "v2"), "missing-binary-v2", compoundDigitalObjectStore,
+          zipBytes);
+      fail("Export should fail when a binary is missing");
+    } catch (ShelfResourceNotFound e) {
+      assertEquals(0, zipBytes.size());
+    } finally {
+      FileUtils.deleteDirectory(missingBinary.toFile());
+    }
+  }
+
     protected void writeZip(ByteArrayOutputStream zipOutputStream) {
 
     try {
@@ -12,10 +12,17 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -98,6 +105,147 @@ public class ZipImportServiceTest {
 
   }
 
+  @Test
+  public void importWithoutMemoryBudgetStagesBinariesInFiles() throws IOException {
+
+    ZipImportService fileStagingService = new ZipImportService(ShelfMappers.getDefault(), 0);
+    Path shelf = temporaryFolder.newFolder("file-staging-shelf").toPath();
+    CompoundDigitalObjectStore store = new FilesystemCDOStore("filesystem:" + shelf.toUri());
+
+    fileStagingService.importKO(ZipImportServiceTest.class
+        .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"), store);
+    service.importKO(ZipImportServiceTest.class
+        .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"),
+        compoundDigitalObjectStore);
+
+    assertArrayEquals(
+        compoundDigitalObjectStore.getBinary("hello-world-v3", "service.yaml"),
+        store.getBinary("hello-world-v3", "service.yaml"));
+  }
+
+  @Test
+  public void importHandsBackItsMemoryBudget() {
+
+    ZipImportService budgetedService = new ZipImportService(ShelfMappers.getDefault(), 1024);
+
+    budgetedService.importKO(ZipImportServiceTest.class
+        .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"),
+        compoundDigitalObjectStore);
+    assertEquals(1024, budgetedService.getMemoryBudget().getAvailable());
+
+    try {
+      budgetedService.importKO(ZipImportServiceTest.class
+          .getResourceAsStream("/fixtures/import-export/bad-kometadata.zip"),
+          compoundDigitalObjectStore);
+      fail("Import of bad metadata should fail");
+    } catch (ShelfException e) {
+      assertEquals(1024, budgetedService.getMemoryBudget().getAvailable());
+    }
+  }
+
+  @Test
+  public void importUploadsBinariesConcurrently() throws IOException {
+
+    Path shelf = temporaryFolder.newFolder("concurrent-upload-shelf").toPath();
+    CountDownLatch bothUploading = new CountDownLatch(2);
+    List<Boolean> overlapped = new CopyOnWriteArrayList<>();
+    CompoundDigitalObjectStore store = new FilesystemCDOStore("filesystem:" + shelf.toUri()) {
+      @Override
+      public void saveBinary(InputStream data, String... relativePathParts) {
+        bothUploading.countDown();
+        try {
+          overlapped.add(bothUploading.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.saveBinary(data, relativePathParts);
+      }
+    };
+
+    service.importKO(ZipImportServiceTest.class
+        .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"), store);
+
+    assertEquals(Arrays.asList(true, true), overlapped);
+    assertEquals(5395, store.getBinary("hello-world-v3", "dist", "main.js").length);
+  }
+
+  @Test
+  public void failedUploadRollsBackTheImport() throws IOException {
+
+    Path shelf = temporaryFolder.newFolder("failed-upload-shelf").toPath();
+    CompoundDigitalObjectStore store = new FilesystemCDOStore("filesystem:" + shelf.toUri()) {
+      @Override
+      public void saveBinary(InputStream data, String... relativePathParts) {
+        if (relativePathParts[relativePathParts.length - 1].endsWith("main.js")) {
+          throw new ShelfException("Disk full");
+        }
+        super.saveBinary(data, relativePathParts);
+      }
+    };
+
+    try {
+      service.importKO(ZipImportServiceTest.class
+          .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"), store);
+      fail("Import should fail when a binary can't be saved");
+    } catch (ShelfException e) {
+      assertEquals("Disk full", e.getCause().getCause().getMessage());
+    }
+    try (Stream<Path> shelfContents = Files.list(shelf)) {
+      assertEquals(0, shelfContents.count());
+    }
+  }
+
+  @Test
+  public void failedUploadRollsBackOnlyAfterOtherUploadsStop() throws IOException {
+
+    Path shelf = temporaryFolder.newFolder("slow-upload-shelf").toPath();
+    CountDownLatch failed = new CountDownLatch(1);
+    AtomicInteger writing = new AtomicInteger();
+    List<Integer> writingAtRollback = new CopyOnWriteArrayList<>();
+    CompoundDigitalObjectStore store = new FilesystemCDOStore("filesystem:" + shelf.toUri()) {
+      @Override
+      public void saveBinary(InputStream data, String... relativePathParts) {
+        if (relativePathParts[relativePathParts.length - 1].endsWith("main.js")) {
+          failed.countDown();
+          throw new ShelfException("Disk full");
+        }
+        writing.incrementAndGet();
+        try {
+          // A writer that ignores the interrupt and keeps going for a while after the failure
+          long giveUp = System.currentTimeMillis() + 5000;
+          while (failed.getCount() > 0 && System.currentTimeMillis() < giveUp) {
+            Thread.yield();
+          }
+          long until = System.currentTimeMillis() + 300;
+          while (System.currentTimeMillis() < until) {
+            Thread.yield();
+          }
+          super.saveBinary(data, relativePathParts);
+        } finally {
+          writing.decrementAndGet();
+        }
+      }
+
+      @Override
+      public void rollbackTransaction(String transactionID) {
+        writingAtRollback.add(writing.get());
+        super.rollbackTransaction(transactionID);
+      }
+    };
+
+    try {
+      service.importKO(ZipImportServiceTest.class
+          .getResourceAsStream("/fixtures/import-export/hello-world-v3.zip"), store);
+      fail("Import should fail when a binary can't be saved");
+    } catch (ShelfException e) {
+      assertEquals("Disk full", e.getCause().getCause().getMessage());
+    }
+    assertEquals(Collections.singletonList(0), writingAtRollback);
+    try (Stream<Path> shelfContents = Files.list(shelf)) {
+      assertEquals(0, shelfContents.count());
+    }
+  }
+
   @Test( expected = ShelfException.class)
   public void testBadKOMetaData() throws IOException {
 